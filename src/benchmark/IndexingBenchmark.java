@@ -0,0 +1,183 @@
+package benchmark;
+
+import indexes.diskPart.IndexWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures how the build of an index scales with the number of indexing
+ * workers, and checks that every number of workers writes the same files.
+ * First small corpora of 1 to 7 documents are indexed with 1 to 4 workers,
+ * so the documents are not split evenly between the workers; a build that
+ * does not finish in time counts as a failure. Then a copy of the corpus is
+ * indexed with 1 to maxThreads workers and the documents per second are
+ * compared to a single worker. The corpus itself is not touched.
+ *
+ * Usage: IndexingBenchmark corpusPath [maxThreads] [repetitions]
+ */
+public class IndexingBenchmark {
+
+    // seconds a build may take before it counts as hanging
+    private static final long TIMEOUT_SECONDS = 300;
+    private static final int SMALL_CORPUS_SIZE = 7;
+    private static final int SMALL_CORPUS_THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: IndexingBenchmark corpusPath [maxThreads] [repetitions]");
+            return;
+        }
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        List<Path> documents = findDocuments(new File(args[0]).toPath());
+        System.out.println("documents: " + documents.size() + ", available processors: "
+                + Runtime.getRuntime().availableProcessors());
+
+        int failures = 0;
+        for (int size = 1; size <= Math.min(SMALL_CORPUS_SIZE, documents.size()); size++) {
+            File corpus = copyCorpus(new File(args[0]).toPath(), documents.subList(0, size));
+            try {
+                Map<String, byte[]> expected = null;
+                for (int threads = 1; threads <= SMALL_CORPUS_THREADS; threads++) {
+                    if (build(corpus, threads) < 0) {
+                        System.out.println(size + " documents, " + threads + " workers: the build did not finish");
+                        System.exit(1);
+                    }
+                    Map<String, byte[]> files = readIndexFiles(corpus);
+                    if (expected == null) {
+                        expected = files;
+                    } else if (!sameFiles(expected, files)) {
+                        System.out.println(size + " documents, " + threads + " workers: the index files differ");
+                        failures++;
+                    }
+                }
+            } finally {
+                deleteFolder(corpus);
+            }
+        }
+        System.out.println("small corpora with uneven ranges: " + failures + " failures");
+
+        File corpus = copyCorpus(new File(args[0]).toPath(), documents);
+        try {
+            Map<String, byte[]> expected = null;
+            double singleSeconds = 0;
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                double best = Double.MAX_VALUE;
+                for (int repetition = 0; repetition < repetitions; repetition++) {
+                    double seconds = build(corpus, threads);
+                    if (seconds < 0) {
+                        System.out.println(threads + " workers: the build did not finish");
+                        System.exit(1);
+                    }
+                    best = Math.min(best, seconds);
+                }
+                Map<String, byte[]> files = readIndexFiles(corpus);
+                boolean same = true;
+                if (expected == null) {
+                    expected = files;
+                    singleSeconds = best;
+                } else {
+                    same = sameFiles(expected, files);
+                }
+                System.out.println(String.format("%2d workers: %7.2f s, %8.0f documents/s, speedup %.2f%s",
+                        threads, best, documents.size() / best, singleSeconds / best,
+                        same ? "" : ", the index files differ"));
+            }
+        } finally {
+            deleteFolder(corpus);
+        }
+    }
+
+    /**
+     * Build the index of a corpus, giving up after TIMEOUT_SECONDS. The
+     * messages of the writer are not printed.
+     *
+     * @param corpus
+     * @param threads number of indexing workers
+     * @return seconds of the build, -1 if it did not finish
+     */
+    private static double build(File corpus, int threads) throws InterruptedException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            long start = System.nanoTime();
+            Thread builder = new Thread(() -> new IndexWriter(corpus.getPath(), Runtime.getRuntime().maxMemory() / 4,
+                    threads).buildIndex(), "indexing-benchmark");
+            builder.setDaemon(true);
+            builder.start();
+            builder.join(TIMEOUT_SECONDS * 1000);
+            if (builder.isAlive()) {
+                return -1;
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static List<Path> findDocuments(Path corpus) throws IOException {
+        try (Stream<Path> walk = Files.walk(corpus)) {
+            return walk.filter(file -> !file.startsWith(corpus.resolve("Indexes"))
+                    && (file.toString().endsWith(".json") || file.toString().endsWith(".txt")))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Copy documents of a corpus to a temporary folder, keeping their paths
+     * relative to the corpus.
+     */
+    private static File copyCorpus(Path corpus, List<Path> documents) throws IOException {
+        Path copy = Files.createTempDirectory("indexing-benchmark");
+        for (Path document : documents) {
+            Path target = copy.resolve(corpus.relativize(document));
+            Files.createDirectories(target.getParent());
+            Files.copy(document, target);
+        }
+        return copy.toFile();
+    }
+
+    private static Map<String, byte[]> readIndexFiles(File corpus) throws IOException {
+        Map<String, byte[]> files = new TreeMap<String, byte[]>();
+        File[] indexFiles = new File(corpus, "Indexes").listFiles();
+        if (indexFiles != null) {
+            for (File file : indexFiles) {
+                if (file.isFile()) {
+                    files.put(file.getName(), Files.readAllBytes(file.toPath()));
+                }
+            }
+        }
+        return files;
+    }
+
+    private static boolean sameFiles(Map<String, byte[]> expected, Map<String, byte[]> files) {
+        if (!expected.keySet().equals(files.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, byte[]> file : expected.entrySet()) {
+            if (!Arrays.equals(file.getValue(), files.get(file.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteFolder(File folder) throws IOException {
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            for (Path path : walk.sorted((p1, p2) -> p2.compareTo(p1)).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package benchmark;
+
+import formulas.FormEnum;
+import indexes.diskPart.DiskKGramIndex;
+import indexes.diskPart.DiskInvertedIndex;
+import indexes.diskPart.IndexReaderMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import query.parser.BooleanParser;
+import query.parser.RankedParser;
+import retrievals.rankedRetrieval.RankedDocument;
+import retrievals.rankedRetrieval.RankedRetrieval;
+
+/**
+ * Measures the query throughput of one shared disk index as the number of
+ * query threads grows. Every run answers the same mix of boolean and ranked
+ * queries made of random vocabulary terms and checks the answers against a
+ * single-threaded run.
+ *
+ * Usage: QueryThroughputBenchmark corpusPath [queries] [maxThreads]
+ * The reader mode is set with -Dindex.reader=mmap or -Dindex.reader=raf.
+ */
+public class QueryThroughputBenchmark {
+
+    private static final long SEED = 529;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: QueryThroughputBenchmark corpusPath [queries] [maxThreads]");
+            return;
+        }
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors() * 2;
+
+        DiskInvertedIndex dIndex = new DiskInvertedIndex(args[0]);
+        // wildcards are not part of the query mix, the k-gram index is only passed on
+        DiskKGramIndex kIndex = new DiskKGramIndex(args[0]);
+        List<String> queries = createQueries(dIndex.getDictionary(), queryCount);
+
+        System.out.println("reader mode: " + IndexReaderMode.getDefault()
+                + ", queries: " + queries.size() + ", cpus: " + Runtime.getRuntime().availableProcessors());
+
+        // warm up and compute the expected answers
+        List<String> expected = new ArrayList<String>(queries.size());
+        for (String query : queries) {
+            expected.add(runQuery(query, dIndex, kIndex));
+        }
+
+        double singleThreadRate = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            AtomicInteger mismatches = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int first = t;
+                final int step = threads;
+                futures.add(pool.submit(() -> {
+                    for (int q = first; q < queries.size(); q += step) {
+                        if (!runQuery(queries.get(q), dIndex, kIndex).equals(expected.get(q))) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+
+            double rate = queries.size() / seconds;
+            if (threads == 1) {
+                singleThreadRate = rate;
+            }
+            System.out.println(String.format("threads %3d: %9.1f queries/s, speedup %.2f, wrong answers %d",
+                    threads, rate, rate / singleThreadRate, mismatches.get()));
+        }
+        dIndex.close();
+    }
+
+    /**
+     * Create a reproducible mix of ranked queries and boolean AND/OR queries.
+     * @param dictionary terms of the index
+     * @param count number of queries
+     * @return list of queries, ranked queries start with "R:"
+     */
+    private static List<String> createQueries(String[] dictionary, int count) {
+        Random random = new Random(SEED);
+        List<String> queries = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            String t1 = dictionary[random.nextInt(dictionary.length)];
+            String t2 = dictionary[random.nextInt(dictionary.length)];
+            String t3 = dictionary[random.nextInt(dictionary.length)];
+            if (i % 2 == 0) {
+                queries.add("R:" + t1 + " " + t2 + " " + t3);
+            } else {
+                queries.add(t1 + " " + t2 + " + " + t3);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Answer the query and describe the answer. Ranked answers are described
+     * by their scores, since documents with equal scores may come in any order.
+     * @param query
+     * @param dIndex
+     * @param kIndex
+     * @return description of the answer
+     */
+    private static String runQuery(String query, DiskInvertedIndex dIndex, DiskKGramIndex kIndex) {
+        if (query.startsWith("R:")) {
+            RankedRetrieval rank = new RankedRetrieval(dIndex, FormEnum.OKAPI);
+            RankedDocument[] results = rank.rankedQuery(kIndex,
+                    new RankedParser(dIndex).collectAndQueries(query.substring(2)), 10);
+            StringBuilder answer = new StringBuilder();
+            if (results != null) {
+                for (RankedDocument result : results) {
+                    answer.append(String.format("%.6f ", result.getAccumulatedScore()));
+                }
+            }
+            return answer.toString();
+        }
+        return new BooleanParser(dIndex, kIndex).getDocumentList(query).toString();
+    }
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import helper.JsonDocument;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import token.DocumentTokenStream;
+import token.SimpleTokenStream;
+import token.TokenProcessorStream;
+
+/**
+ * Compares the DocumentTokenStream with the SimpleTokenStream and
+ * TokenProcessorStream pair used before it. Both tokenize the bodies of the
+ * json documents of a corpus; the tokens and their positions of every
+ * document are checked to be identical, then the throughput of both is
+ * measured.
+ *
+ * Usage: TokenizerBenchmark corpusPath [repetitions]
+ */
+public class TokenizerBenchmark {
+
+    // words that exercise the processing rules
+    private static final String RULES_TEXT = "Hello, WORLD! don't 'quoted' rock'n'roll self-driving "
+            + "--dash-- a--b -x- well-known-fact' 'tis ... _under_score_ (x) \u00c4\u00d6\u00dc stra\u00dfe \u0130stanbul "
+            + "\u03a3\u039f\u03a6\u039f\u03a3 na\u00efve-caf\u00e9 123-456 \"x\" \u00a0nbsp\u2028line\u0085end tab\tnew\nline";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TokenizerBenchmark corpusPath [repetitions]");
+            return;
+        }
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<String> bodies = readBodies(args[0]);
+        bodies.add(RULES_TEXT);
+        long chars = 0;
+        for (String body : bodies) {
+            chars += body.length();
+        }
+
+        int mismatches = 0;
+        DocumentTokenStream stream = new DocumentTokenStream("");
+        for (String body : bodies) {
+            if (!tokenizeOld(body).equals(tokenizeNew(body, stream))) {
+                mismatches++;
+            }
+        }
+        System.out.println("documents: " + bodies.size() + ", characters: " + chars
+                + ", documents with different tokens: " + mismatches);
+
+        for (int repetition = 0; repetition < repetitions; repetition++) {
+            long start = System.nanoTime();
+            long tokens = 0;
+            for (String body : bodies) {
+                tokens += countOld(body);
+            }
+            double oldSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            long newTokens = 0;
+            for (String body : bodies) {
+                newTokens += countNew(body, stream);
+            }
+            double newSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Scanner + regex: %6.1f MB/s, %8.0f tokens/s | "
+                    + "DocumentTokenStream: %6.1f MB/s, %8.0f tokens/s | speedup %.1f",
+                    chars / oldSeconds / 1e6, tokens / oldSeconds,
+                    chars / newSeconds / 1e6, newTokens / newSeconds, oldSeconds / newSeconds));
+        }
+    }
+
+    private static List<String> readBodies(String path) throws IOException {
+        Gson gson = new Gson();
+        List<String> bodies = new ArrayList<String>();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(new File(path).toPath())) {
+            files = walk.filter(file -> file.toString().endsWith(".json")).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            JsonDocument doc = gson.fromJson(new String(Files.readAllBytes(file)), JsonDocument.class);
+            if (doc != null && doc.getBody() != null) {
+                bodies.add(doc.getBody());
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * Tokenize as the indexer did before, describing every token with its
+     * position, followed by the number of words.
+     */
+    private static List<String> tokenizeOld(String body) {
+        List<String> tokens = new ArrayList<String>();
+        SimpleTokenStream s = new SimpleTokenStream(body);
+        int position = 0;
+        while (s.hasNextToken()) {
+            TokenProcessorStream t = new TokenProcessorStream(s.nextToken());
+            while (t.hasNextToken()) {
+                String token = t.nextToken();
+                if (token != null) {
+                    tokens.add(position + ":" + token);
+                }
+            }
+            position++;
+        }
+        tokens.add("words " + position);
+        return tokens;
+    }
+
+    private static List<String> tokenizeNew(String body, DocumentTokenStream stream) {
+        List<String> tokens = new ArrayList<String>();
+        stream.reset(body);
+        while (stream.hasNextToken()) {
+            String token = stream.nextToken();
+            tokens.add(stream.getPosition() + ":" + token);
+        }
+        tokens.add("words " + stream.getWordCount());
+        return tokens;
+    }
+
+    private static long countOld(String body) {
+        long tokens = 0;
+        SimpleTokenStream s = new SimpleTokenStream(body);
+        while (s.hasNextToken()) {
+            TokenProcessorStream t = new TokenProcessorStream(s.nextToken());
+            while (t.hasNextToken()) {
+                if (t.nextToken() != null) {
+                    tokens++;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static long countNew(String body, DocumentTokenStream stream) {
+        long tokens = 0;
+        stream.reset(body);
+        while (stream.hasNextToken()) {
+            stream.nextToken();
+            tokens++;
+        }
+        return tokens;
+    }
+}
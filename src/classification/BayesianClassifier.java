@@ -150,7 +150,7 @@ public class BayesianClassifier {
             if (index.getPostingsList(discSet.get(i)) != null) {
                 List<PositionalPosting> pList = index.getPostingsList(discSet.get(i));
                 for (PositionalPosting p : pList) {
-                    tf += p.getTermPositions().size();
+                    tf += p.getTermFrequency();
                 }
                 totalTf += tf;
             }
@@ -2,7 +2,6 @@ package formulas;
 
 import indexes.diskPart.DiskInvertedIndex;
 import indexes.diskPart.DiskPosting;
-import java.util.List;
 
 /**
  * Formula for calculating the default algorithm as described in the paper.
@@ -20,14 +19,15 @@ public class DefaultForm extends Formula {
     }
 
     /**
-     * Calculate the weight for the query and the given postingslist.
+     * Calculate the weight for the query and a term with the given document
+     * frequency.
      *
-     * @param tDocIDs List of postings
+     * @param documentFrequency Number of documents that contain the term
      * @return The weight as a double
      */
     @Override
-    public double calcWQT(List<DiskPosting> tDocIDs) {
-        return Math.log((((double) dIndex.getCorpusSize()) / ((double) tDocIDs.size())) + 1);
+    public double calcWQT(int documentFrequency) {
+        return Math.log((((double) dIndex.getCorpusSize()) / ((double) documentFrequency)) + 1);
     }
 
     /**
@@ -1,5 +1,7 @@
 package formulas;
 
+import indexes.diskPart.DiskInvertedIndex;
+
 /**
  * Enum for easier GUI setup and calling the right methods and classes.
  */
@@ -25,6 +27,25 @@ public enum FormEnum {
         }
     }
 
+    /**
+     * Create the formula of this type for the given index.
+     *
+     * @param dIndex The disk inverted index the formula works on.
+     * @return The formula.
+     */
+    public Formula createFormula(DiskInvertedIndex dIndex) {
+        switch (this) {
+            case OKAPI:
+                return new OkapiForm(dIndex);
+            case TFIDF:
+                return new TfidfForm(dIndex);
+            case WACKY:
+                return new WackyForm(dIndex);
+            default:
+                return new DefaultForm(dIndex);
+        }
+    }
+
     /**
      * Get the right type of enum by giving the ID. Also needed for working with
      * the combo box.
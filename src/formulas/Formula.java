@@ -27,7 +27,18 @@ public abstract class Formula {
      * @param tDocIDs List of postings
      * @return The weight as a double
      */
-    public abstract double calcWQT(List<DiskPosting> tDocIDs);
+    public double calcWQT(List<DiskPosting> tDocIDs) {
+        return calcWQT(tDocIDs.size());
+    }
+
+    /**
+     * Calculate the weight for the query and a term with the given document
+     * frequency.
+     *
+     * @param documentFrequency Number of documents that contain the term
+     * @return The weight as a double
+     */
+    public abstract double calcWQT(int documentFrequency);
 
     /**
      * Calculate the weight for term per document.
@@ -44,4 +55,39 @@ public abstract class Formula {
      * @return The length of the document
      */
     public abstract double getL_D(int docID);
+
+    /**
+     * Calculate the length of the document of the given posting.
+     *
+     * @param dPosting The Posting of a term in the document.
+     * @return The length of the document
+     */
+    public double getL_D(DiskPosting dPosting) {
+        return getL_D(dPosting.getDocumentID());
+    }
+
+    /**
+     * Calculate the weight for term per document divided by the length of the
+     * document. Multiplied by the weight for the query it is the share of the
+     * term in the score of the document.
+     *
+     * @param dPosting The Posting that saves the term frequency in a document.
+     * @return The weight as a double
+     */
+    public double calcNormalizedWDT(DiskPosting dPosting) {
+        return calcWDT(dPosting) / getL_D(dPosting);
+    }
+
+    /**
+     * Get the factor that score bounds calculated with another average
+     * document length have to be multiplied with to stay upper bounds of the
+     * normalized weights of the index. Formulas that do not use the average
+     * document length need no factor.
+     *
+     * @param avgDocLength average document length the bounds were calculated with
+     * @return factor of at least 1
+     */
+    public double getScoreBoundScale(double avgDocLength) {
+        return 1;
+    }
 }
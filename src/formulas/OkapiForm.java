@@ -2,7 +2,6 @@ package formulas;
 
 import indexes.diskPart.DiskInvertedIndex;
 import indexes.diskPart.DiskPosting;
-import java.util.List;
 
 /**
  * Formula for calculating the okapi algorithm as described in the paper.
@@ -22,14 +21,15 @@ public class OkapiForm extends Formula {
     }
 
     /**
-     * Calculate the weight for the query and the given postingslist.
+     * Calculate the weight for the query and a term with the given document
+     * frequency.
      *
-     * @param tDocIDs List of postings
+     * @param documentFrequency Number of documents that contain the term
      * @return The weight as a double
      */
     @Override
-    public double calcWQT(List<DiskPosting> tDocIDs) {
-        double res = Math.log((((double) (dIndex.getCorpusSize() - tDocIDs.size())) + 0.5) / (((double) tDocIDs.size()) + 0.5));
+    public double calcWQT(int documentFrequency) {
+        double res = Math.log((((double) (dIndex.getCorpusSize() - documentFrequency)) + 0.5) / (((double) documentFrequency) + 0.5));
         return Math.max(0.1, res);
     }
 
@@ -52,7 +52,32 @@ public class OkapiForm extends Formula {
      */
     @Override
     public double getL_D(int docID) {
-        return (1.2 * (0.25 + 0.75 * (((double) dIndex.getDocLength(docID)) / ((double) dIndex.getAvgDocLength())))) + ((double) dPosting.getTermFrequency());
+        return (1.2 * (0.25 + 0.75 * (dIndex.getDocLength(docID) / dIndex.getAvgDocLength()))) + ((double) dPosting.getTermFrequency());
+    }
+
+    /**
+     * Calculate the length of the document with the term frequency of the
+     * given posting.
+     *
+     * @param dPosting Posting that saves the term frequency.
+     * @return The length of the document
+     */
+    @Override
+    public double getL_D(DiskPosting dPosting) {
+        setdPosting(dPosting);
+        return getL_D(dPosting.getDocumentID());
+    }
+
+    /**
+     * The length of a document gets smaller relative to a larger average
+     * document length, by at most the ratio of the averages.
+     *
+     * @param avgDocLength average document length the bounds were calculated with
+     * @return factor of at least 1
+     */
+    @Override
+    public double getScoreBoundScale(double avgDocLength) {
+        return Math.max(1, dIndex.getAvgDocLength() / avgDocLength);
     }
 
     /**
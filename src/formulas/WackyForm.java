@@ -2,7 +2,6 @@ package formulas;
 
 import indexes.diskPart.DiskInvertedIndex;
 import indexes.diskPart.DiskPosting;
-import java.util.List;
 
 /**
  * Formula for calculating the wacky algorithm as described in the paper.
@@ -20,15 +19,15 @@ public class WackyForm extends Formula {
     }
 
     /**
-     * Calculate the weight for the query and the given postingslist.
+     * Calculate the weight for the query and a term with the given document
+     * frequency.
      *
-     * @param tDocIDs List of postings
+     * @param documentFrequency Number of documents that contain the term
      * @return The weight as a double
      */
     @Override
-    public double calcWQT(List<DiskPosting> tDocIDs) {
-        int dft = tDocIDs.size();
-        double res = Math.log(((double) (dIndex.getCorpusSize() - dft)) / (double) dft);
+    public double calcWQT(int documentFrequency) {
+        double res = Math.log(((double) (dIndex.getCorpusSize() - documentFrequency)) / (double) documentFrequency);
         return Math.max(0, res);
     }
 
@@ -1,26 +1,57 @@
 package helper;
 
+import java.util.concurrent.ConcurrentHashMap;
 // See README for references
 import org.tartarus.snowball.ext.englishStemmer;
 
 
 /**
  * Class for a Porter Stemmer in English
- * 
+ *
+ * The stems are cached for all threads, so a word is stemmed about once no
+ * matter how often it is indexed or queried. The cache holds up to
+ * CACHE_CAPACITY words, set with the system property stemmer.cache; words
+ * seen after it is full are stemmed every time. Frequent words come early,
+ * so they are the ones that stay cached.
  */
 public final class PorterStemmer {
-    private final static englishStemmer STEMMER = new englishStemmer();
-    
+    // the snowball stemmer keeps state, so every thread gets its own
+    private final static ThreadLocal<englishStemmer> STEMMER = new ThreadLocal<englishStemmer>() {
+        @Override
+        protected englishStemmer initialValue() {
+            return new englishStemmer();
+        }
+    };
+
+    public static final int CACHE_CAPACITY = Integer.getInteger("stemmer.cache", 200000);
+    private final static ConcurrentHashMap<String, String> STEMS = new ConcurrentHashMap<String, String>();
+
     /**
      * Stem the given token string
      * @param token
      * @return stem of the token
      */
     public static String getStem(String token){
-        STEMMER.setCurrent(token);
-        if(STEMMER.stem()){
-            return STEMMER.getCurrent();
+        String stem = STEMS.get(token);
+        if (stem != null) {
+            return stem;
+        }
+        englishStemmer stemmer = STEMMER.get();
+        stemmer.setCurrent(token);
+        if(stemmer.stem()){
+            stem = stemmer.getCurrent();
+            if (STEMS.size() < CACHE_CAPACITY) {
+                STEMS.put(token, stem);
+            }
+            return stem;
         }
         return null;
     }
+
+    /**
+     * @return number of words with a cached stem
+     */
+    public static int getCacheSize() {
+        return STEMS.size();
+    }
 }
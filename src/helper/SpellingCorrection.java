@@ -1,9 +1,10 @@
 package helper;
 
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import token.QueryTokenStream;
 import query.processor.DiskQueryProcessor;
+import query.processor.KWayUnion;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedSet;
@@ -20,12 +21,12 @@ public class SpellingCorrection {
     private static final String OP_REGEX = "^[near/\\d+]+$"; // match boolean operators
 
     private final DiskInvertedIndex dIndex;
-    private final KGramIndex kIndex;
+    private final DiskKGramIndex kIndex;
     private String[] queryTokens; // store the unprocessed tokens from the query
     private List<Integer> correctionIndex; // index of where to do the correction
     private Boolean isPhrase;
 
-    public SpellingCorrection(String query, DiskInvertedIndex dIndex, KGramIndex kIndex) {
+    public SpellingCorrection(String query, DiskInvertedIndex dIndex, DiskKGramIndex kIndex) {
         this.dIndex = dIndex;
         this.kIndex = kIndex;
 
@@ -52,7 +53,7 @@ public class SpellingCorrection {
                 QueryTokenStream t = new QueryTokenStream(token);
                 String term = t.nextToken();
                 if (term != null && !term.contains("*")) { // ignore wildcards
-                    if (dIndex.getPostings(term) == null || dIndex.getPostings(term).size() < DF_THRESHOLD) {
+                    if (dIndex.getDocumentFrequency(term) < DF_THRESHOLD) {
                         ciList.add(queryIndex);
                     }
                 }
@@ -78,7 +79,7 @@ public class SpellingCorrection {
                 try {
                     QueryTokenStream t = new QueryTokenStream(token);
                     String term = t.nextToken();
-                    postingSize += this.dIndex.getPostings(term).size();
+                    postingSize += this.dIndex.getDocumentFrequency(term);
                 } catch (NullPointerException ex) {
                 }
             }
@@ -132,24 +133,28 @@ public class SpellingCorrection {
         // Get the k-grams for the token
         List<String> qKGrams = getKGrams(token);
 
-        // Get the vocabulary types that have k-grams in common with the query
-        List<String> candidates = new ArrayList<String>();
+        // Get the IDs of the vocabulary types that have k-grams in common with the query
+        List<int[]> kGramTypeIds = new ArrayList<int[]>();
         for (int i = 0; i < qKGrams.size(); i++) {
-            if (kIndex.getPostingsList(qKGrams.get(i)) != null) {
-                candidates = DiskQueryProcessor.unionList(candidates, kIndex.getPostingsList(qKGrams.get(i)));
+            int[] typeIds = kIndex.getTypeIds(qKGrams.get(i));
+            if (typeIds != null) {
+                kGramTypeIds.add(typeIds);
             }
         }
+        int[] candidateIds = KWayUnion.unionIds(kGramTypeIds);
 
         // Assume the first letter is correct
         String first2Gram = "$" + Character.toString(token.charAt(0));
-        if (kIndex.getPostingsList(first2Gram) != null) {
-            candidates = DiskQueryProcessor.intersectList(candidates, kIndex.getPostingsList(first2Gram));
+        int[] first2GramIds = kIndex.getTypeIds(first2Gram);
+        if (first2GramIds != null) {
+            candidateIds = DiskQueryProcessor.intersectIds(candidateIds, first2GramIds);
         }
 
         // Calculate the Jaccard coefficient for the candidates
         // Perform edit distance on those that exceed the threshold
         List<String> editDistanceCandidates = new ArrayList<String>();
-        for (String candidate : candidates) {
+        for (int candidateId : candidateIds) {
+            String candidate = kIndex.getType(candidateId);
             // Get the k-grams for the candidate
             List<String> cKGrams = getKGrams(candidate);
 
@@ -192,12 +197,12 @@ public class SpellingCorrection {
         if (finalCandidates.size() > 1) {
             String type = finalCandidates.get(0); // set the first candidate as the max
             String term = PorterStemmer.getStem(type);
-            int maxDocFrequency = dIndex.getPostings(term).size();
+            int maxDocFrequency = dIndex.getDocumentFrequency(term);
 
             // Compare the df with the remaining candidates
             for (int i = 1; i < finalCandidates.size(); i++) {
                 term = PorterStemmer.getStem(finalCandidates.get(i));
-                int docFrequency = dIndex.getPostings(term).size();
+                int docFrequency = dIndex.getDocumentFrequency(term);
                 if (docFrequency > maxDocFrequency) {
                     maxDocFrequency = docFrequency; // update the highest df
                     type = finalCandidates.get(i); // update the type to be returned
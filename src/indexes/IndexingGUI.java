@@ -14,6 +14,7 @@ import javax.swing.*;
 public class IndexingGUI extends JFrame implements ThreadFinishedCallBack {
 
     private Path path; // save the path
+    private char mode; // 'b' to build, 'a' to add new documents, 'm' to merge and compact
     private Indexing indexedCorpus = new Indexing(); // task for indexing
     private Thread thread; // thread for indexing in background
 
@@ -26,7 +27,19 @@ public class IndexingGUI extends JFrame implements ThreadFinishedCallBack {
      * @param path Path where to index.
      */
     public IndexingGUI(Path path) {
+        this(path, 'b');
+    }
+
+    /**
+     * Start indexing with the given path.
+     *
+     * @param path Path where to index.
+     * @param mode 'b' to build the index, 'a' to add the new documents to
+     * it, 'm' to merge its deltas and compact it
+     */
+    public IndexingGUI(Path path, char mode) {
         this.path = path;
+        this.mode = mode;
 
         progress = new ProgressDialog("Indexing..."); // create the progress bar
         indexing(); // Start indexing. While indexing, show a progress bar to user
@@ -37,7 +50,7 @@ public class IndexingGUI extends JFrame implements ThreadFinishedCallBack {
      */
     private void indexing() {
         progress.setVisible(true); // show the progressbar   
-        indexedCorpus = new Indexing(path, this); // start the task idexing  
+        indexedCorpus = new Indexing(path, this, mode); // start the task idexing  
         thread = new Thread(indexedCorpus);
         thread.start(); // start the task  
     }
@@ -8,6 +8,9 @@ import java.util.*;
  */
 public class PositionalInvertedIndex extends Index<PositionalPosting> {
 
+    private long mPostingCount; // number of postings in the index
+    private long mPositionCount; // number of positions in the index
+
     public PositionalInvertedIndex() {
         super();
     }
@@ -20,11 +23,37 @@ public class PositionalInvertedIndex extends Index<PositionalPosting> {
                 postingsList.get(postingsList.size() - 1).addPosition(position);
             } else { // add a new posting
                 postingsList.add(new PositionalPosting(docID, position));
+                mPostingCount++;
             }
         } else { // add the term and new posting to the index
             mIndex.put(term, new ArrayList<PositionalPosting>());
             mIndex.get(term).add(new PositionalPosting(docID, position));
+            mPostingCount++;
         }
+        mPositionCount++;
+    }
+
+    /**
+     * @return the number of postings in the index
+     */
+    public long getPostingCount() {
+        return mPostingCount;
+    }
+
+    /**
+     * @return the number of term positions in the index
+     */
+    public long getPositionCount() {
+        return mPositionCount;
+    }
+
+    /**
+     * Remove all terms and postings from the index
+     */
+    public void clear() {
+        mIndex.clear();
+        mPostingCount = 0;
+        mPositionCount = 0;
     }
 
     /**
@@ -46,12 +75,17 @@ public class PositionalInvertedIndex extends Index<PositionalPosting> {
      *
      * @param term
      * @param docID
-     * @return list of term positions
+     * @return array of term positions
      */
-    public List<Integer> getDocumentTermPositions(String term, int docID) {
+    public int[] getDocumentTermPositions(String term, int docID) {
         int docIndex = Collections.binarySearch(getDocumentPostingsList(term), docID);
         if (docIndex >= 0) {
-            return mIndex.get(term).get(docIndex).getTermPositions();
+            PositionalPosting posting = mIndex.get(term).get(docIndex);
+            int[] positions = new int[posting.getTermFrequency()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = posting.getPosition(i);
+            }
+            return positions;
         }
         return null;
     }
@@ -1,21 +1,22 @@
 package indexes;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Posting for a positional inverted index
+ * Posting for a positional inverted index. The positions are kept in a
+ * growable int array instead of a list of boxed integers.
  *
  */
 public class PositionalPosting implements Comparable<PositionalPosting> {
 
     private int documentID;
-    private List<Integer> termPositions;
+    private int[] termPositions;
+    private int termFrequency; // number of positions in termPositions
 
     public PositionalPosting(int documentID, int position) {
         this.documentID = documentID;
-        termPositions = new ArrayList<Integer>();
-        termPositions.add(position);
+        termPositions = new int[]{position};
+        termFrequency = 1;
     }
 
     /**
@@ -26,10 +27,25 @@ public class PositionalPosting implements Comparable<PositionalPosting> {
     }
 
     /**
+     * @return the number of positions
+     */
+    public int getTermFrequency() {
+        return termFrequency;
+    }
+
+    /**
+     * @param index index of the position, less than the term frequency
      * @return the position
      */
-    public List<Integer> getTermPositions() {
-        return termPositions;
+    public int getPosition(int index) {
+        return termPositions[index];
+    }
+
+    /**
+     * @return a copy of the positions, in increasing order
+     */
+    public int[] getPositions() {
+        return Arrays.copyOf(termPositions, termFrequency);
     }
 
     /**
@@ -38,7 +54,10 @@ public class PositionalPosting implements Comparable<PositionalPosting> {
      * @param position
      */
     public void addPosition(int position) {
-        termPositions.add(position);
+        if (termFrequency == termPositions.length) {
+            termPositions = Arrays.copyOf(termPositions, termFrequency * 2);
+        }
+        termPositions[termFrequency++] = position;
     }
 
     @Override
@@ -48,7 +67,7 @@ public class PositionalPosting implements Comparable<PositionalPosting> {
 
     @Override
     public String toString() {
-        return "<" + documentID + ":" + termPositions.toString() + ">";
+        return "<" + documentID + ":" + Arrays.toString(Arrays.copyOf(termPositions, termFrequency)) + ">";
     }
 
     @Override
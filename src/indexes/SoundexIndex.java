@@ -4,6 +4,7 @@ package indexes;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class for a soundex index. The keys are a phonetic hashing of a term and
@@ -29,6 +30,22 @@ public class SoundexIndex extends Index<Integer> {
         }
     }
     
+    /**
+     * Append the postings of another soundex index to this one. The documents
+     * of the other index have to come after the documents of this index.
+     *
+     * @param other soundex index of the following documents
+     */
+    public void addAll(SoundexIndex other) {
+        for (Map.Entry<String, List<Integer>> entry : other.mIndex.entrySet()) {
+            if (mIndex.containsKey(entry.getKey())) {
+                mIndex.get(entry.getKey()).addAll(entry.getValue());
+            } else {
+                mIndex.put(entry.getKey(), new ArrayList<Integer>(entry.getValue()));
+            }
+        }
+    }
+    
     /**
      * Soundex algorithm to generate a phonetic hashing from the given term
      * @param term
@@ -97,6 +114,23 @@ public class SoundexIndex extends Index<Integer> {
     public List<Integer> getCodePosts(String soundexCode){
         return mIndex.get(soundexCode);
     }
+
+    /**
+     * Append document IDs to the postings list of a soundex code, for
+     * reading a soundex index back from disk.
+     * 
+     * @param soundexCode Four-character code representing
+     * an author name
+     * @param docIDs document IDs in increasing order
+     */
+    public void addCodePosts(String soundexCode, List<Integer> docIDs){
+        if(mIndex.containsKey(soundexCode)){
+            mIndex.get(soundexCode).addAll(docIDs);
+        }
+        else{
+            mIndex.put(soundexCode, new ArrayList<Integer>(docIDs));
+        }
+    }
     
     
 }
@@ -0,0 +1,530 @@
+package indexes.diskPart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Index of the adjacent pairs of the most frequent terms of a segment, so a
+ * phrase of frequent terms reads the few documents in which two of them are
+ * next to each other instead of the long positional postings of both. The
+ * postings of a pair "first second" hold the positions of the first term.
+ *
+ * Every pair of the listed terms is indexed, so a pair of them without
+ * postings appears in no document of the segment. The index is an optional
+ * folder in the folder of the segment with the vocabulary, postings and
+ * positions files of the pairs, written by the PostingsWriter, and the terms
+ * file with the sorted terms whose pairs are indexed.
+ */
+final class BiwordIndex extends DiskIndex {
+
+    // system property for the number of most frequent terms whose pairs are indexed, 0 for no index
+    static final String PROPERTY = "index.biwords";
+    // folder of the index in the folder of a segment
+    static final String FOLDER = "biwords";
+    // file of the terms whose pairs are indexed
+    static final String TERMS_FILE = "terms.bin";
+    // most terms whose pairs are indexed, the key of a pair has to fit into 31 bits
+    static final int MAX_TERMS = 46340;
+
+    private final String[] mTerms; // sorted
+    private int mFormat;
+    private ByteSource mPositions;
+    private long[] mPositionsOffsets; // byte position of the positions of every pair
+    private int[] mDocumentFrequencies;
+
+    private BiwordIndex(File folder, IndexReaderMode mode) throws IOException {
+        mTerms = readTerms(folder);
+        mVocabList = ByteSource.open(new File(folder, "vocab.bin"), mode);
+        mPostings = ByteSource.open(new File(folder, "postings.bin"), mode);
+        mPositions = ByteSource.open(new File(folder, DiskInvertedIndex.POSITIONS_FILE), mode);
+        mFormat = mPostings.getInt(4);
+        readPairTable(new File(folder, "vocabTable.bin"), mode);
+        if (mVocabTable.length > 0) {
+            readTermDictionary();
+        }
+    }
+
+    /**
+     * Opens the biword index of a segment.
+     *
+     * @param segmentFolder folder of the segment
+     * @param mode how the files are read
+     * @return the index, null if the segment has none
+     */
+    static BiwordIndex open(File segmentFolder, IndexReaderMode mode) {
+        File folder = new File(segmentFolder, FOLDER);
+        if (!new File(folder, TERMS_FILE).isFile()) {
+            return null;
+        }
+        try {
+            return new BiwordIndex(folder, mode);
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of terms whose pairs are indexed in a segment, without
+     * opening its biword index.
+     *
+     * @param segmentFolder folder of the segment
+     * @return number of terms, 0 if the segment has no biword index
+     */
+    static int readTermCount(File segmentFolder) {
+        File folder = new File(segmentFolder, FOLDER);
+        if (!new File(folder, TERMS_FILE).isFile()) {
+            return 0;
+        }
+        try {
+            return readTerms(folder).length;
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return 0;
+    }
+
+    private static String[] readTerms(File folder) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(folder, TERMS_FILE))))) {
+            String[] terms = new String[in.readInt()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = in.readUTF();
+            }
+            return terms;
+        }
+    }
+
+    /**
+     * Reads the vocab table of the pairs into memory, the statistics besides
+     * the document frequency are not needed.
+     *
+     * @param tableFile
+     * @param mode
+     */
+    private void readPairTable(File tableFile, IndexReaderMode mode) throws IOException {
+        ByteSource table = ByteSource.open(tableFile, mode);
+        try {
+            ByteBuffer buffer = table.read(0, (int) table.length());
+            int pairCount = buffer.getInt();
+            long[] vocabTable = new long[pairCount * 2];
+            mPositionsOffsets = new long[pairCount];
+            mDocumentFrequencies = new int[pairCount];
+            for (int pairIndex = 0; pairIndex < pairCount; pairIndex++) {
+                vocabTable[pairIndex * 2] = buffer.getLong();
+                vocabTable[pairIndex * 2 + 1] = buffer.getLong();
+                mPositionsOffsets[pairIndex] = buffer.getLong();
+                mDocumentFrequencies[pairIndex] = buffer.getInt();
+                buffer.getLong(); // collection frequency
+                buffer.getInt(); // highest term frequency
+            }
+            mVocabTable = vocabTable;
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * @param first
+     * @param second
+     * @return true if the pairs of both terms are indexed
+     */
+    boolean covers(String first, String second) {
+        return Arrays.binarySearch(mTerms, first) >= 0 && Arrays.binarySearch(mTerms, second) >= 0;
+    }
+
+    /**
+     * @return the sorted terms whose pairs are indexed
+     */
+    String[] getTerms() {
+        return mTerms;
+    }
+
+    /**
+     * @param first
+     * @param second
+     * @return number of documents in which the first term is followed by the
+     * second, 0 if the pair is not found
+     */
+    int getDocumentFrequency(String first, String second) {
+        int pairIndex = binarySearchTermIndex(first + " " + second);
+        return pairIndex >= 0 ? mDocumentFrequencies[pairIndex] : 0;
+    }
+
+    /**
+     * Opens a cursor over the documents in which the first term is followed
+     * by the second, with the positions of the first term.
+     *
+     * @param first
+     * @param second
+     * @param liveDocs the live documents of the index, null if no document is
+     * deleted
+     * @return postings cursor, null if the pair is not found
+     */
+    PostingsCursor getCursor(String first, String second, LiveDocs liveDocs) {
+        int pairIndex = binarySearchTermIndex(first + " " + second);
+        if (pairIndex >= 0) {
+            try {
+                long positionsEnd = pairIndex + 1 < mPositionsOffsets.length
+                        ? mPositionsOffsets[pairIndex + 1] : mPositions.length();
+                ByteBuffer positions = mPositions.read(mPositionsOffsets[pairIndex],
+                        (int) (positionsEnd - mPositionsOffsets[pairIndex]));
+                return new PostingsCursor(readPostingsRecord(pairIndex), mFormat, liveDocs, true, positions);
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Select the terms of a segment whose pairs are indexed.
+     *
+     * @param segment segment of an index
+     * @param count number of terms, at most MAX_TERMS are selected
+     * @return the terms with the highest document frequencies, sorted
+     */
+    static String[] selectTerms(DiskInvertedIndex segment, int count) {
+        String[] dictionary = segment.getSegmentDictionary();
+        Integer[] order = new Integer[dictionary.length];
+        int[] documentFrequencies = new int[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            order[i] = i;
+            documentFrequencies[i] = segment.getDocumentFrequency(dictionary[i]);
+        }
+        // ties keep the order of the dictionary, so the selection is repeatable
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Integer.compare(documentFrequencies[i2], documentFrequencies[i1]);
+            }
+        });
+        String[] terms = new String[Math.min(Math.min(count, MAX_TERMS), dictionary.length)];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = dictionary[order[i]];
+        }
+        Arrays.sort(terms);
+        return terms;
+    }
+
+    /**
+     * Writes the biword index of a segment from its positional postings. The
+     * postings of the terms are read side by side in document ID order, and
+     * in every document the positions of the terms are sorted, so the pairs
+     * are the terms at consecutive positions. The positions of the pairs are
+     * buffered until they use up the memory budget, then they are written to
+     * disk as a sorted run; the runs are merged like the runs of the indexing
+     * workers.
+     *
+     * @param segment segment of an index
+     * @param terms the sorted terms whose pairs are indexed
+     * @param memoryBudget heap bytes the buffered pairs may use before they
+     * are written to a run
+     */
+    static void write(DiskInvertedIndex segment, String[] terms, long memoryBudget) throws IOException {
+        File folder = new File(segment.getFolder(), FOLDER);
+        folder.mkdir();
+        PostingsCursor[] cursors = new PostingsCursor[terms.length];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(Math.max(1, terms.length),
+                new Comparator<Integer>() {
+            @Override
+            public int compare(Integer t1, Integer t2) {
+                return Integer.compare(cursors[t1].getDocumentID(), cursors[t2].getDocumentID());
+            }
+        });
+        for (int t = 0; t < terms.length; t++) {
+            cursors[t] = segment.getSegmentPostingsCursor(terms[t], true);
+            if (cursors[t] != null && cursors[t].next()) {
+                queue.add(t);
+            }
+        }
+
+        PairBuffer buffer = new PairBuffer(terms, memoryBudget);
+        File runFolder = new File(folder, "runs");
+        List<File> runs = new ArrayList<File>();
+        long[] entries = new long[64]; // position << 32 | term of the current document
+        long[] pairs = new long[64]; // key of the pair << 32 | position of the current document
+        while (!queue.isEmpty()) {
+            int docID = cursors[queue.peek()].getDocumentID();
+            int entryCount = 0;
+            while (!queue.isEmpty() && cursors[queue.peek()].getDocumentID() == docID) {
+                int t = queue.poll();
+                for (int position : cursors[t].getPositions()) {
+                    if (entryCount == entries.length) {
+                        entries = Arrays.copyOf(entries, entryCount * 2);
+                    }
+                    entries[entryCount++] = ((long) position << 32) | t;
+                }
+                if (cursors[t].next()) {
+                    queue.add(t);
+                }
+            }
+            Arrays.sort(entries, 0, entryCount);
+            // a term can be listed twice at a position, its pairs are indexed once
+            int uniqueCount = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (uniqueCount == 0 || entries[i] != entries[uniqueCount - 1]) {
+                    entries[uniqueCount++] = entries[i];
+                }
+            }
+            entryCount = uniqueCount;
+            // terms can share a position, every term of it pairs with every term of the next one
+            int pairCount = 0;
+            int start = 0;
+            while (start < entryCount) {
+                int position = (int) (entries[start] >>> 32);
+                int end = start;
+                while (end < entryCount && (int) (entries[end] >>> 32) == position) {
+                    end++;
+                }
+                int nextEnd = end;
+                while (nextEnd < entryCount && (int) (entries[nextEnd] >>> 32) == position + 1) {
+                    nextEnd++;
+                }
+                for (int i = start; i < end; i++) {
+                    for (int j = end; j < nextEnd; j++) {
+                        long key = (entries[i] & 0xffffffffL) * terms.length + (entries[j] & 0xffffffffL);
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairCount * 2);
+                        }
+                        pairs[pairCount++] = key << 32 | position;
+                    }
+                }
+                start = end;
+            }
+            // a run ends with a whole document, so the runs hold increasing document IDs
+            if (buffer.size() > 0 && !buffer.fits(pairCount)) {
+                runFolder.mkdir();
+                File run = new File(runFolder, "run" + runs.size() + ".bin");
+                buffer.writeRun(run);
+                runs.add(run);
+            }
+            buffer.add(docID, pairs, pairCount);
+        }
+
+        if (runs.isEmpty()) {
+            // everything fit into memory, write the index directly
+            PostingsWriter writer = new PostingsWriter(folder.getPath());
+            buffer.writePostings(writer);
+            writer.close();
+        } else {
+            if (buffer.size() > 0) {
+                File run = new File(runFolder, "run" + runs.size() + ".bin");
+                buffer.writeRun(run);
+                runs.add(run);
+            }
+            IndexWriter.mergeRuns(folder.getPath(), runs);
+            runFolder.delete();
+        }
+        // the terms file marks a complete index, it is written last
+        try (DataOutputStream termsFile = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(folder, TERMS_FILE))))) {
+            termsFile.writeInt(terms.length);
+            for (String term : terms) {
+                termsFile.writeUTF(term);
+            }
+        }
+    }
+
+    /**
+     * Deletes the biword index of a segment.
+     *
+     * @param segmentFolder folder of the segment
+     */
+    static void delete(File segmentFolder) {
+        File folder = new File(segmentFolder, FOLDER);
+        // the terms file goes first, so a partly deleted index is not opened
+        new File(folder, TERMS_FILE).delete();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // the run folder of a write that did not finish
+                File[] runs = file.listFiles();
+                if (runs != null) {
+                    for (File run : runs) {
+                        run.delete();
+                    }
+                }
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            if (mPositions != null) {
+                mPositions.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
+    /**
+     * The positions of the pairs of a part of the segment in three primitive
+     * arrays. An entry is sorted by the key of its pair and by its index in
+     * the buffer, so the entries of a pair keep their document ID and
+     * position order.
+     */
+    private static class PairBuffer {
+
+        // heap bytes of an entry: sort key, document ID and position
+        private static final int ENTRY_BYTES = 16;
+
+        private final String[] mTerms;
+        private final int mMaxSize; // entries that fit into the memory budget
+        private long[] mKeys = new long[1024]; // key of the pair << 32 | index of the entry
+        private int[] mDocIDs = new int[1024];
+        private int[] mPositions = new int[1024];
+        private int mSize;
+        private int[] mPostingPositions = new int[16]; // positions of the posting that is written
+
+        private PairBuffer(String[] terms, long memoryBudget) {
+            mTerms = terms;
+            mMaxSize = (int) Math.min(Integer.MAX_VALUE - 8, memoryBudget / ENTRY_BYTES);
+        }
+
+        /**
+         * @param count number of entries
+         * @return true if the entries can be added within the memory budget
+         */
+        private boolean fits(int count) {
+            return (long) mSize + count <= mMaxSize;
+        }
+
+        /**
+         * Add the pairs of a document. The arrays grow up to the memory
+         * budget, beyond it only for the pairs of a single document.
+         *
+         * @param docID document ID, not less than the ones added before
+         * @param pairs key of the pair << 32 | position, in position order
+         * @param count number of pairs
+         */
+        private void add(int docID, long[] pairs, int count) {
+            if (mSize + count > mKeys.length) {
+                int capacity = Math.max(mSize + count, Math.min(mKeys.length * 2, mMaxSize));
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mDocIDs = Arrays.copyOf(mDocIDs, capacity);
+                mPositions = Arrays.copyOf(mPositions, capacity);
+            }
+            for (int i = 0; i < count; i++) {
+                mKeys[mSize] = (pairs[i] & 0xffffffff00000000L) | mSize;
+                mDocIDs[mSize] = docID;
+                mPositions[mSize] = (int) pairs[i];
+                mSize++;
+            }
+        }
+
+        private int size() {
+            return mSize;
+        }
+
+        /**
+         * Writes the buffered pairs to a run file in the format of the runs
+         * of the indexing workers and clears the buffer.
+         *
+         * @param file the run file
+         */
+        private void writeRun(File file) throws IOException {
+            Arrays.sort(mKeys, 0, mSize);
+            int pairCount = 0;
+            for (int start = 0; start < mSize; start = pairEnd(start)) {
+                pairCount++;
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(pairCount);
+                for (int start = 0; start < mSize; start = pairEnd(start)) {
+                    int end = pairEnd(start);
+                    out.writeUTF(getPair(start));
+                    out.writeInt(countPostings(start, end));
+                    for (int posting = start; posting < end; posting = postingEnd(posting, end)) {
+                        int postingEnd = postingEnd(posting, end);
+                        out.writeInt(mDocIDs[(int) mKeys[posting]]);
+                        out.writeInt(postingEnd - posting);
+                        for (int i = posting; i < postingEnd; i++) {
+                            out.writeInt(mPositions[(int) mKeys[i]]);
+                        }
+                    }
+                }
+            }
+            mSize = 0;
+        }
+
+        /**
+         * Writes the buffered pairs to the index files and clears the buffer.
+         *
+         * @param writer writer of the index files
+         */
+        private void writePostings(PostingsWriter writer) throws IOException {
+            Arrays.sort(mKeys, 0, mSize);
+            for (int start = 0; start < mSize; start = pairEnd(start)) {
+                int end = pairEnd(start);
+                writer.startTerm(getPair(start), countPostings(start, end));
+                for (int posting = start; posting < end; posting = postingEnd(posting, end)) {
+                    int postingEnd = postingEnd(posting, end);
+                    if (postingEnd - posting > mPostingPositions.length) {
+                        mPostingPositions = new int[Math.max(postingEnd - posting, mPostingPositions.length * 2)];
+                    }
+                    for (int i = posting; i < postingEnd; i++) {
+                        mPostingPositions[i - posting] = mPositions[(int) mKeys[i]];
+                    }
+                    writer.addPosting(mDocIDs[(int) mKeys[posting]], postingEnd - posting, mPostingPositions);
+                }
+                writer.finishTerm();
+            }
+            mSize = 0;
+        }
+
+        /**
+         * The terms are sorted and contain no character below the space, so
+         * the keys of the pairs sort like their strings.
+         *
+         * @param entry index of a sorted entry
+         * @return the pair of the entry, the terms separated by a space
+         */
+        private String getPair(int entry) {
+            long key = mKeys[entry] >>> 32;
+            return mTerms[(int) (key / mTerms.length)] + " " + mTerms[(int) (key % mTerms.length)];
+        }
+
+        private int pairEnd(int start) {
+            int end = start + 1;
+            while (end < mSize && mKeys[end] >>> 32 == mKeys[start] >>> 32) {
+                end++;
+            }
+            return end;
+        }
+
+        private int postingEnd(int start, int pairEnd) {
+            int end = start + 1;
+            while (end < pairEnd && mDocIDs[(int) mKeys[end]] == mDocIDs[(int) mKeys[start]]) {
+                end++;
+            }
+            return end;
+        }
+
+        private int countPostings(int start, int pairEnd) {
+            int count = 0;
+            for (int posting = start; posting < pairEnd; posting = postingEnd(posting, pairEnd)) {
+                count++;
+            }
+            return count;
+        }
+    }
+}
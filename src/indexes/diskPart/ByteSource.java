@@ -0,0 +1,53 @@
+package indexes.diskPart;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only access to the bytes of an index file at absolute positions.
+ * Implementations keep no read position, so a source can be shared by
+ * concurrent queries.
+ */
+interface ByteSource {
+
+    /**
+     * Opens the file with the given reader mode. Falls back to a
+     * RandomAccessFile if the file cannot be mapped.
+     * @param file
+     * @param mode
+     * @return byte source of the file
+     */
+    static ByteSource open(File file, IndexReaderMode mode) throws FileNotFoundException {
+        if (mode == IndexReaderMode.MEMORY_MAPPED) {
+            try {
+                return new MappedByteSource(file);
+            } catch (FileNotFoundException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                System.out.println(file + " could not be mapped: " + ex.toString());
+            }
+        }
+        return new RandomAccessByteSource(file);
+    }
+
+    /**
+     * @return number of bytes of the file
+     */
+    long length() throws IOException;
+
+    /**
+     * Get the bytes at the given position.
+     * @param position
+     * @param length number of bytes
+     * @return big-endian buffer of the bytes, from position 0 to its limit
+     */
+    ByteBuffer read(long position, int length) throws IOException;
+
+    int getInt(long position) throws IOException;
+
+    double getDouble(long position) throws IOException;
+
+    void close() throws IOException;
+}
@@ -1,8 +1,9 @@
 package indexes.diskPart;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -17,10 +18,13 @@ import java.util.List;
  */
 public abstract class DiskIndex {
     
-    protected RandomAccessFile mVocabList;
-    protected RandomAccessFile mPostings;
+    ByteSource mVocabList;
+    ByteSource mPostings;
     protected long[] mVocabTable;
+    FrontCodedDictionary mTermDictionary;
+    LiveDocs mLiveDocs; // null if no document is deleted
     protected List<String> mFileNames;
+    DocumentTable mDocumentTable; // table of the file names, null for indexes built without one
     protected List<String> terms = null;
     protected String[] dictionary;
     
@@ -30,43 +34,92 @@ public abstract class DiskIndex {
      * @return byte position of the posting
      */
     protected long binarySearchVocabulary(String term) {
-        // do a binary search over the vocabulary, using the vocabTable and the file vocabList.
-        int i = 0, j = mVocabTable.length / 2 - 1;
-        while (i <= j) {
-            try {
-                int m = (i + j) / 2;
-                long vListPosition = mVocabTable[m * 2];
-                int termLength;
-                if (m == mVocabTable.length / 2 - 1) {
-                    termLength = (int) (mVocabList.length() - mVocabTable[m * 2]);
-                } else {
-                    termLength = (int) (mVocabTable[(m + 1) * 2] - vListPosition);
-                }
+        int termIndex = binarySearchTermIndex(term);
+        return termIndex >= 0 ? mVocabTable[termIndex * 2 + 1] : -1;
+    }
 
-                mVocabList.seek(vListPosition);
+    /**
+     * Locates the position of the given term in the vocabulary.
+     * @param term
+     * @return index of the term in the vocabulary table, -1 if not found
+     */
+    protected int binarySearchTermIndex(String term) {
+        return mTermDictionary != null ? mTermDictionary.find(term) : -1;
+    }
 
-                byte[] buffer = new byte[termLength];
-                mVocabList.read(buffer, 0, termLength);
-                String fileTerm = new String(buffer, "ASCII");
+    /**
+     * Get the ASCII bytes of the term at the given index of the vocabulary.
+     * @param termIndex
+     * @return buffer of the term bytes
+     */
+    private ByteBuffer readTermBytes(int termIndex) throws IOException {
+        long vListPosition = mVocabTable[termIndex * 2];
+        int termLength;
+        if (termIndex == mVocabTable.length / 2 - 1) {
+            termLength = (int) (mVocabList.length() - vListPosition);
+        } else {
+            termLength = (int) (mVocabTable[(termIndex + 1) * 2] - vListPosition);
+        }
+        return mVocabList.read(vListPosition, termLength);
+    }
 
-                int compareValue = term.compareTo(fileTerm);
-                if (compareValue == 0) {
-                    // found it!
-                    return mVocabTable[m * 2 + 1];
-                } else if (compareValue < 0) {
-                    j = m - 1;
-                } else {
-                    i = m + 1;
-                }
-            } catch (IOException ex) {
-                System.out.println(ex.toString());
+    /**
+     * Get the postings record of the term at the given index of the
+     * vocabulary. The postings of the next term follow directly.
+     * @param termIndex
+     * @return buffer of the postings bytes of the term
+     */
+    protected ByteBuffer readPostingsRecord(int termIndex) throws IOException {
+        long postingsPosition = mVocabTable[termIndex * 2 + 1];
+        long postingsEnd = termIndex + 1 < mVocabTable.length / 2
+                ? mVocabTable[(termIndex + 1) * 2 + 1] : mPostings.length();
+        return mPostings.read(postingsPosition, (int) (postingsEnd - postingsPosition));
+    }
+
+    /**
+     * Reads a vocabulary table file into memory.
+     * @param tableFile
+     * @param mode
+     * @return byte positions of the terms and their postings
+     */
+    protected static long[] readVocabTable(File tableFile, IndexReaderMode mode) {
+        try {
+            ByteSource table = ByteSource.open(tableFile, mode);
+            try {
+                ByteBuffer buffer = table.read(0, (int) table.length());
+                long[] vocabTable = new long[buffer.getInt() * 2];
+                buffer.asLongBuffer().get(vocabTable);
+                return vocabTable;
+            } finally {
+                table.close();
             }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
         }
-        return -1;
+        return null;
     }
-    
+
+    /**
+     * Reads the terms of the vocab file into the in-memory dictionary that
+     * locates terms without reading the file. The vocab file and table must
+     * be opened first.
+     */
+    protected void readTermDictionary() {
+        if (mVocabList == null || mVocabTable == null) {
+            return;
+        }
+        try {
+            mTermDictionary = new FrontCodedDictionary(
+                    mVocabList.read(0, (int) mVocabList.length()), mVocabTable);
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
      /**
-     * Walk the file tree to get the names of the files
+     * Walk the file tree to get the names of the files, for indexes that
+     * were built without a document table. The files are found as the
+     * IndexWriter finds them.
      * @param path directory path
      * @return array of file names
      */
@@ -85,8 +138,8 @@ public abstract class DiskIndex {
                 @Override
                 public FileVisitResult visitFile(Path file,
                         BasicFileAttributes attrs) throws FileNotFoundException {
-                    // only process .json files
-                    if (file.toString().endsWith(".json")) {
+                    // only process .json and .txt files
+                    if (file.toString().endsWith(".json") || file.toString().endsWith(".txt")) {
                         fileNames.add(file.toFile().getName()); // add to list
                     }
                     return FileVisitResult.CONTINUE;
@@ -108,27 +161,18 @@ public abstract class DiskIndex {
      * Get the terms of the index
      * @return array of index terms
      */
-    public String[] getDictionary() {
+    public synchronized String[] getDictionary() {
         if (dictionary == null) {
             List<String> vocabList = new ArrayList<String>();
-            int i = 0, j = mVocabTable.length / 2 - 1;
-            while (i <= j) {
+            for (int i = 0; i < mVocabTable.length / 2; i++) {
                 try {
-                    int termLength;
-                    if (i == j) {
-                        termLength = (int) (mVocabList.length() - mVocabTable[i * 2]);
-                    } else {
-                        termLength = (int) (mVocabTable[(i + 1) * 2] - mVocabTable[i * 2]);
-                    }
-
-                    byte[] buffer = new byte[termLength];
-                    mVocabList.read(buffer, 0, termLength);
-                    String term = new String(buffer, "ASCII");
-                    vocabList.add(term);
+                    ByteBuffer termBytes = readTermBytes(i);
+                    byte[] buffer = new byte[termBytes.remaining()];
+                    termBytes.get(buffer);
+                    vocabList.add(new String(buffer, "ASCII"));
                 } catch (IOException ex) {
                     System.out.println(ex.toString());
                 }
-                i++;
             }
             dictionary = vocabList.toArray(new String[0]);
         }
@@ -143,6 +187,25 @@ public abstract class DiskIndex {
     public List<String> getFileNames() {
         return mFileNames;
     }
+
+    /**
+     * Close the files of the index.
+     */
+    public void close() {
+        try {
+            if (mVocabList != null) {
+                mVocabList.close();
+            }
+            if (mPostings != null) {
+                mPostings.close();
+            }
+            if (mDocumentTable != null) {
+                mDocumentTable.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
     
 }
 
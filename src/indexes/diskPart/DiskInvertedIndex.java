@@ -1,175 +1,819 @@
 package indexes.diskPart;
 
+import formulas.FormEnum;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * Positional inverted index on disk
+ *
+ * Documents added after the index was built are indexed into delta segments
+ * in numbered folders next to the index files, each with its own postings
+ * and document statistics. The document IDs of a delta continue the ones of
+ * the segments before it. The index searches the base segment and all
+ * deltas as one index, until the IndexWriter merges them into one segment.
+ *
+ * Deleted documents are marked in the bitmap of the live documents of the
+ * index. Their postings are skipped when they are decoded or iterated, until
+ * the IndexWriter compacts the index. The statistics of the terms and the
+ * corpus still count them until then.
  */
 public class DiskInvertedIndex extends DiskIndex {
-    
-    private RandomAccessFile mWeightList;
+
+    // first bytes of a postings file that starts with a format header
+    static final int POSTINGS_MAGIC = 0x50535431;
+    // every number of the postings is a 4 byte int, the file has no header
+    static final int FORMAT_FIXED = 1;
+    // variable byte postings that start with skip entries, the vocab table
+    // holds the statistics of the terms and the positions are in their own file
+    static final int FORMAT_SEPARATE_POSITIONS = 5;
+    // format written by the IndexWriter
+    static final int FORMAT_CURRENT = FORMAT_SEPARATE_POSITIONS;
+
+    // file with the positions of the postings, read only by positional queries
+    static final String POSITIONS_FILE = "positions.bin";
+
+    // file with the score upper bounds of every term for every formula
+    static final String SCORE_BOUNDS_FILE = "scoreBounds.bin";
+
+    // name of the folders of the delta segments, followed by their number
+    static final String DELTA_PREFIX = "delta";
+
+    private final File mFolder; // folder of the index files of the segment
+    private final List<DiskInvertedIndex> mDeltas = new ArrayList<DiskInvertedIndex>(); // delta segments in document ID order
+    private int mSegment; // number of the segment, 0 for the base
+    private String[] mCombinedDictionary; // terms of all segments
+
     private int mCorpusSize;
+    // statistics of every document from the weights file, one column each
+    private double[] mDocWeights;
+    private double[] mDocLengths;
+    private double[] mDocSizes;
+    private double[] mAvgTermFrequencies;
+    private double mAvgDocLength;
+    private int mFormat; // format of the postings file
+    private ByteSource mPositions; // null for fixed format indexes, their positions are in the postings
+    private long[] mPositionsOffsets; // byte position of the positions of every term
+    private int[] mDocumentFrequencies; // df_t of every term, null for fixed format indexes
+    private long[] mCollectionFrequencies; // cf_t of every term
+    private int[] mMaxTermFrequencies; // highest tf_t,d of every term
+    private float[] mScoreBounds; // score bounds of every term for every formula, null if there are none
+    private double mScoreBoundsAvgDocLength; // average document length the score bounds were calculated with
+    private BiwordIndex mBiwords; // adjacent pairs of the frequent terms, null if the segment has none
+    private volatile PostingsCache mPostingsCache = new PostingsCache(PostingsCache.getDefaultCapacity());
 
     /**
-     * Opens a disk inverted index that was constructed in the given path.
+     * Opens a disk inverted index that was constructed in the given path,
+     * with the reader mode set by the system property index.reader.
      * @param path 
      */
     public DiskInvertedIndex(String path) {
+        this(path, IndexReaderMode.getDefault());
+    }
+
+    /**
+     * Opens a disk inverted index that was constructed in the given path.
+     * @param path 
+     * @param mode how the index files are read
+     */
+    public DiskInvertedIndex(String path, IndexReaderMode mode) {
+        this(new File(path, "Indexes"), mode);
+        List<File> deltaFolders = findDeltaFolders(mFolder);
+        List<File> segmentFolders = new ArrayList<File>();
+        segmentFolders.add(mFolder);
+        segmentFolders.addAll(deltaFolders);
+        mDocumentTable = DocumentTable.open(segmentFolders, mode);
+        // indexes built before the document table walk the corpus
+        mFileNames = mDocumentTable != null ? mDocumentTable : readFileNames(path);
+        mLiveDocs = LiveDocs.read(mFolder);
+        for (File deltaFolder : deltaFolders) {
+            DiskInvertedIndex delta = new DiskInvertedIndex(deltaFolder, mode);
+            delta.mSegment = mDeltas.size() + 1;
+            delta.mPostingsCache = mPostingsCache;
+            delta.mLiveDocs = mLiveDocs;
+            mDeltas.add(delta);
+        }
+        if (!mDeltas.isEmpty()) {
+            appendDeltaDocuments();
+            scaleScoreBounds();
+        }
+    }
+
+    /**
+     * Opens the segment of a disk inverted index in the given folder.
+     * @param folder folder of the index files of the segment
+     * @param mode how the index files are read
+     */
+    private DiskInvertedIndex(File folder, IndexReaderMode mode) {
+        mFolder = folder;
         try {
-            String pathIndexes = path + "//Indexes";
-            mVocabList = new RandomAccessFile(new File(pathIndexes, "vocab.bin"), "r");
-            mPostings = new RandomAccessFile(new File(pathIndexes, "postings.bin"), "r");
-            mWeightList = new RandomAccessFile(new File(pathIndexes, "docWeights.bin"), "r");
-            mVocabTable = readVocabTable(pathIndexes);
-            mFileNames = readFileNames(path);
-            mCorpusSize = readCorpusSize(pathIndexes);
+            mVocabList = ByteSource.open(new File(folder, "vocab.bin"), mode);
+            mPostings = ByteSource.open(new File(folder, "postings.bin"), mode);
+            mFormat = readFormat(mPostings);
+            if (mFormat != FORMAT_FIXED && mFormat != FORMAT_CURRENT) {
+                System.out.println("Unsupported index format " + mFormat + ", please rebuild the index");
+                closeSources();
+                return;
+            }
+            if (mFormat == FORMAT_FIXED) {
+                mVocabTable = readVocabTable(new File(folder, "vocabTable.bin"), mode);
+            } else {
+                mPositions = ByteSource.open(new File(folder, POSITIONS_FILE), mode);
+                readVocabTableWithStats(new File(folder, "vocabTable.bin"), mode);
+            }
+            readTermDictionary();
+            mCorpusSize = readCorpusSize(folder.getPath());
+            readDocStatistics(new File(folder, "docWeights.bin"), mode);
+            mScoreBounds = readScoreBounds(new File(folder, SCORE_BOUNDS_FILE), mode);
+            mBiwords = BiwordIndex.open(folder, mode);
         } catch (FileNotFoundException ex) {
             System.out.println(ex.toString());
         }
     }
 
     /**
-     * Read the postings from file
+     * Find the folders of the delta segments of an index.
+     * @param indexFolder folder of the index files
+     * @return the delta folders in the order of their numbers
+     */
+    static List<File> findDeltaFolders(File indexFolder) {
+        List<File> deltaFolders = new ArrayList<File>();
+        File[] files = indexFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && file.getName().matches(DELTA_PREFIX + "\\d+")) {
+                    deltaFolders.add(file);
+                }
+            }
+        }
+        Collections.sort(deltaFolders, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Integer.compare(getDeltaNumber(f1), getDeltaNumber(f2));
+            }
+        });
+        return deltaFolders;
+    }
+
+    /**
+     * @param deltaFolder
+     * @return number of a delta segment
+     */
+    static int getDeltaNumber(File deltaFolder) {
+        return Integer.parseInt(deltaFolder.getName().substring(DELTA_PREFIX.length()));
+    }
+
+    /**
+     * Append the documents of the delta segments to the documents of the
+     * base segment, so the statistics of all documents are found by their
+     * document IDs. The average document length is calculated over
+     * all documents.
+     */
+    private void appendDeltaDocuments() {
+        int corpusSize = mCorpusSize;
+        for (DiskInvertedIndex delta : mDeltas) {
+            corpusSize += delta.mCorpusSize;
+        }
+        double[] docWeights = Arrays.copyOf(mDocWeights, corpusSize);
+        double[] docLengths = Arrays.copyOf(mDocLengths, corpusSize);
+        double[] docSizes = Arrays.copyOf(mDocSizes, corpusSize);
+        double[] avgTermFrequencies = Arrays.copyOf(mAvgTermFrequencies, corpusSize);
+        int firstDocId = mCorpusSize;
+        for (DiskInvertedIndex delta : mDeltas) {
+            System.arraycopy(delta.mDocWeights, 0, docWeights, firstDocId, delta.mCorpusSize);
+            System.arraycopy(delta.mDocLengths, 0, docLengths, firstDocId, delta.mCorpusSize);
+            System.arraycopy(delta.mDocSizes, 0, docSizes, firstDocId, delta.mCorpusSize);
+            System.arraycopy(delta.mAvgTermFrequencies, 0, avgTermFrequencies, firstDocId, delta.mCorpusSize);
+            firstDocId += delta.mCorpusSize;
+        }
+        double totalDocLength = 0;
+        for (double docLength : docLengths) {
+            totalDocLength += docLength;
+        }
+        mDocWeights = docWeights;
+        mDocLengths = docLengths;
+        mDocSizes = docSizes;
+        mAvgTermFrequencies = avgTermFrequencies;
+        mAvgDocLength = totalDocLength / corpusSize;
+        mCorpusSize = corpusSize;
+    }
+
+    /**
+     * Scale the score bounds of the segments that were calculated with
+     * another average document length than the one of the whole index, so
+     * they stay upper bounds of the scores. The bounds of a delta are
+     * calculated when it is added, the bounds of the segments before are not
+     * calculated again.
+     */
+    private void scaleScoreBounds() {
+        FormEnum[] forms = FormEnum.values();
+        for (DiskInvertedIndex segment : getSegments()) {
+            if (segment.mScoreBounds == null || segment.mScoreBoundsAvgDocLength == mAvgDocLength) {
+                continue;
+            }
+            for (FormEnum form : forms) {
+                double scale = form.createFormula(this).getScoreBoundScale(segment.mScoreBoundsAvgDocLength);
+                if (scale > 1) {
+                    for (int i = form.ordinal(); i < segment.mScoreBounds.length; i += forms.length) {
+                        // round up, the bound must not get lower as a float
+                        double bound = segment.mScoreBounds[i] * scale;
+                        float floatBound = (float) bound;
+                        segment.mScoreBounds[i] = floatBound < bound ? Math.nextUp(floatBound) : floatBound;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the files opened for an index that can not be read, so the
+     * segment is left empty.
+     */
+    private void closeSources() {
+        try {
+            mVocabList.close();
+            mPostings.close();
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        mVocabList = null;
+        mPostings = null;
+    }
+
+    /**
+     * Read the format of the postings file from its header. Postings files
+     * without a header are written with fixed 4 byte numbers.
      * @param postings
-     * @param postingsPosition
+     * @return format of the postings file
+     */
+    private static int readFormat(ByteSource postings) {
+        try {
+            if (postings.length() >= 8 && postings.getInt(0) == POSTINGS_MAGIC) {
+                return postings.getInt(4);
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return FORMAT_FIXED;
+    }
+
+    /**
+     * Reads the vocab table with the statistics of every term into memory.
+     * @param tableFile
+     * @param mode
+     */
+    private void readVocabTableWithStats(File tableFile, IndexReaderMode mode) {
+        try {
+            ByteSource table = ByteSource.open(tableFile, mode);
+            try {
+                ByteBuffer buffer = table.read(0, (int) table.length());
+                int termCount = buffer.getInt();
+                long[] vocabTable = new long[termCount * 2];
+                mPositionsOffsets = new long[termCount];
+                mDocumentFrequencies = new int[termCount];
+                mCollectionFrequencies = new long[termCount];
+                mMaxTermFrequencies = new int[termCount];
+                for (int termIndex = 0; termIndex < termCount; termIndex++) {
+                    vocabTable[termIndex * 2] = buffer.getLong();
+                    vocabTable[termIndex * 2 + 1] = buffer.getLong();
+                    mPositionsOffsets[termIndex] = buffer.getLong();
+                    mDocumentFrequencies[termIndex] = buffer.getInt();
+                    mCollectionFrequencies[termIndex] = buffer.getLong();
+                    mMaxTermFrequencies[termIndex] = buffer.getInt();
+                }
+                mVocabTable = vocabTable;
+            } finally {
+                table.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
+    /**
+     * Reads the score bounds of the terms and the average document length
+     * they were calculated with into memory.
+     * @param boundsFile
+     * @param mode
+     * @return score bounds, null if the file does not exist or does not match the vocab table
+     */
+    private float[] readScoreBounds(File boundsFile, IndexReaderMode mode) {
+        if (!boundsFile.exists() || mVocabTable == null) {
+            return null;
+        }
+        try {
+            ByteSource bounds = ByteSource.open(boundsFile, mode);
+            try {
+                ByteBuffer buffer = bounds.read(0, (int) bounds.length());
+                int termCount = buffer.getInt();
+                int formCount = buffer.getInt();
+                if (termCount != mVocabTable.length / 2 || formCount != FormEnum.values().length
+                        || buffer.remaining() != 8 + termCount * formCount * 4L) {
+                    System.out.println(boundsFile + " does not match the index, ranked queries are not pruned");
+                    return null;
+                }
+                mScoreBoundsAvgDocLength = buffer.getDouble();
+                float[] scoreBounds = new float[termCount * formCount];
+                buffer.asFloatBuffer().get(scoreBounds);
+                return scoreBounds;
+            } finally {
+                bounds.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Decode the variable byte encoded postings record of a term.
+     * @param buffer the postings record
+     * @param positions the positions record of the term, null to decode the
+     * postings without positions
+     * @return list of disk postings
+     */
+    private static List<DiskPosting> decodeEncodedPostings(ByteBuffer buffer, ByteBuffer positions) {
+        int documentFrequency = VariableByte.decode(buffer);
+        // skip over the skip entries, the postings are decoded as a whole
+        int skipInterval = VariableByte.decode(buffer);
+        int skipCount = skipInterval == 0 ? 0 : (documentFrequency - 1) / skipInterval;
+        for (int skipIndex = 0; skipIndex < 2 * skipCount; skipIndex++) {
+            VariableByte.skip(buffer);
+        }
+        List<DiskPosting> diskPostings = new ArrayList<DiskPosting>(documentFrequency);
+        int lastDocId = 0;
+        for (int postingIndex = 0; postingIndex < documentFrequency; postingIndex++) {
+            // add lastDocId to decode the gap
+            int docId = VariableByte.decode(buffer) + lastDocId;
+            lastDocId = docId;
+            int termFrequency = VariableByte.decode(buffer);
+
+            if (positions != null) {
+                int[] documentPositions = new int[termFrequency];
+                int lastPosition = 0;
+                for (int positionIndex = 0; positionIndex < termFrequency; positionIndex++) {
+                    // add lastPosition to decode the gap
+                    int position = VariableByte.decode(positions) + lastPosition;
+                    documentPositions[positionIndex] = position;
+                    lastPosition = position;
+                }
+                diskPostings.add(new DiskPosting(docId, termFrequency, documentPositions));
+            } else {
+                diskPostings.add(new DiskPosting(docId, termFrequency));
+            }
+        }
+        return diskPostings;
+    }
+
+    /**
+     * Decode the postings record of a term with fixed 4 byte numbers.
+     * @param buffer the postings record
      * @param withPositions
      * @return list of disk postings
      */
-    private static List<DiskPosting> readPostingsFromFile(RandomAccessFile postings,
-            long postingsPosition, boolean withPositions) {
-        try {
-            // seek to the position in the file where the postings start.
-            postings.seek(postingsPosition);
-
-            // read the 4 bytes for the document frequency
-            byte[] buffer = new byte[4];
-            postings.read(buffer, 0, buffer.length);
-
-            // use ByteBuffer to convert the 4 bytes into an int.
-            int documentFrequency = ByteBuffer.wrap(buffer).getInt();
-
-            // initialize the array that will hold the postings.
-            List<DiskPosting> diskPostings = new ArrayList<DiskPosting>(documentFrequency);
-
-            // write the following code:
-            //
-            // read 4 bytes at a time from the file, until you have read as many
-            // postings as the document frequency promised.
-            //    
-            // after each read, convert the bytes to an int posting. this value
-            // is the GAP since the last posting. decode the document ID from
-            // the gap and put it in the array.
-            //
-            // repeat until all postings are read.
-            int lastDocId = 0;
-            for (int postingIndex = 0; postingIndex < documentFrequency; postingIndex++) {
-
-                // read the 4 bytes for the docId; add lastDocId to decode gap
-                postings.read(buffer, 0, buffer.length);
-                int docId = ByteBuffer.wrap(buffer).getInt() + lastDocId;
-                lastDocId = docId;
-
-                // read the 4 bytes for the term frequency
-                postings.read(buffer, 0, buffer.length);
-                int termFrequency = ByteBuffer.wrap(buffer).getInt();
-
-                if (withPositions) {
-                    // the positions for the document
-                    List<Integer> positions = new ArrayList<Integer>(termFrequency);
-                    int lastPosition = 0;
-                    for (int positionIndex = 0; positionIndex < termFrequency; positionIndex++) {
-
-                        // read the 4 bytes for the positions; add lastPosition to decode gap
-                        postings.read(buffer, 0, buffer.length);
-                        int position = ByteBuffer.wrap(buffer).getInt() + lastPosition;
-                        positions.add(position);
-                        lastPosition = position;
-                    }
-                    diskPostings.add(new DiskPosting(docId, termFrequency, positions));
-                } else {
-                    postings.skipBytes(4 * termFrequency); // skip over the positions
-                    diskPostings.add(new DiskPosting(docId, termFrequency));
+    private static List<DiskPosting> decodeFixedPostings(ByteBuffer buffer, boolean withPositions) {
+        int documentFrequency = buffer.getInt();
+        List<DiskPosting> diskPostings = new ArrayList<DiskPosting>(documentFrequency);
+        int lastDocId = 0;
+        for (int postingIndex = 0; postingIndex < documentFrequency; postingIndex++) {
+            // read the docId; add lastDocId to decode gap
+            int docId = buffer.getInt() + lastDocId;
+            lastDocId = docId;
+            int termFrequency = buffer.getInt();
+
+            if (withPositions) {
+                int[] positions = new int[termFrequency];
+                int lastPosition = 0;
+                for (int positionIndex = 0; positionIndex < termFrequency; positionIndex++) {
+                    // read the positions; add lastPosition to decode gap
+                    int position = buffer.getInt() + lastPosition;
+                    positions[positionIndex] = position;
+                    lastPosition = position;
                 }
+                diskPostings.add(new DiskPosting(docId, termFrequency, positions));
+            } else {
+                // skip over the positions
+                ((Buffer) buffer).position(buffer.position() + 4 * termFrequency);
+                diskPostings.add(new DiskPosting(docId, termFrequency));
             }
+        }
+        return diskPostings;
+    }
 
-            return diskPostings;
+    /**
+     * Read the postings of the term at the given vocabulary index in the
+     * format of the postings file.
+     * @param termIndex
+     * @param withPositions
+     * @return list of disk postings
+     */
+    private List<DiskPosting> readPostings(int termIndex, boolean withPositions) {
+        List<DiskPosting> postings = mPostingsCache.get(mSegment, termIndex, withPositions);
+        if (postings != null) {
+            return postings;
+        }
+        try {
+            ByteBuffer record = readPostingsRecord(termIndex);
+            if (mFormat == FORMAT_FIXED) {
+                postings = decodeFixedPostings(record, withPositions);
+            } else {
+                postings = decodeEncodedPostings(record,
+                        withPositions ? readPositionsRecord(termIndex) : null);
+            }
+            if (mLiveDocs != null) {
+                postings = removeDeleted(postings, mLiveDocs);
+            }
+            postings = Collections.unmodifiableList(postings);
+            mPostingsCache.put(mSegment, termIndex, withPositions, postings);
+            return postings;
         } catch (IOException ex) {
             System.out.println(ex.toString());
         }
         return null;
     }
     
+    /**
+     * Remove the postings of deleted documents from a postings list.
+     * @param postings
+     * @param liveDocs
+     * @return list of the postings of live documents
+     */
+    private static List<DiskPosting> removeDeleted(List<DiskPosting> postings, LiveDocs liveDocs) {
+        List<DiskPosting> livePostings = new ArrayList<DiskPosting>(postings.size());
+        for (DiskPosting posting : postings) {
+            if (liveDocs.isLive(posting.getDocumentID())) {
+                livePostings.add(posting);
+            }
+        }
+        return livePostings;
+    }
+
+    /**
+     * Get the positions record of the term at the given vocabulary index.
+     * @param termIndex
+     * @return buffer of the positions bytes of the term
+     */
+    private ByteBuffer readPositionsRecord(int termIndex) throws IOException {
+        long positionsPosition = mPositionsOffsets[termIndex];
+        long positionsEnd = termIndex + 1 < mPositionsOffsets.length
+                ? mPositionsOffsets[termIndex + 1] : mPositions.length();
+        return mPositions.read(positionsPosition, (int) (positionsEnd - positionsPosition));
+    }
+
+    /**
+     * Get the number of documents that contain the given term.
+     * @param term
+     * @return document frequency of the term
+     */
     public int getCorpusFrequency(String term){
-        if (getPostings(term) == null){
-            return 0;
+        return getDocumentFrequency(term);
+    }
+
+    /**
+     * Get the number of documents that contain the given term from the
+     * vocab table, without reading the postings.
+     * @param term
+     * @return document frequency of the term, 0 if the term is not found
+     */
+    public int getDocumentFrequency(String term) {
+        int documentFrequency;
+        if (mDocumentFrequencies != null) {
+            int termIndex = binarySearchTermIndex(term);
+            documentFrequency = termIndex >= 0 ? mDocumentFrequencies[termIndex] : 0;
+        } else {
+            TermStats stats = getSegmentTermStats(term);
+            documentFrequency = stats == null ? 0 : stats.getDocumentFrequency();
+        }
+        for (DiskInvertedIndex delta : mDeltas) {
+            documentFrequency += delta.getDocumentFrequency(term);
+        }
+        return documentFrequency;
+    }
+
+    /**
+     * Get the document frequency, collection frequency and highest term
+     * frequency of the given term. Indexes in the fixed format have no
+     * statistics in the vocab table, their postings are read instead.
+     * @param term
+     * @return statistics of the term, null if the term is not found
+     */
+    public TermStats getTermStats(String term) {
+        TermStats stats = getSegmentTermStats(term);
+        for (DiskInvertedIndex delta : mDeltas) {
+            TermStats deltaStats = delta.getTermStats(term);
+            if (stats == null) {
+                stats = deltaStats;
+            } else if (deltaStats != null) {
+                stats = new TermStats(stats.getDocumentFrequency() + deltaStats.getDocumentFrequency(),
+                        stats.getCollectionFrequency() + deltaStats.getCollectionFrequency(),
+                        Math.max(stats.getMaxTermFrequency(), deltaStats.getMaxTermFrequency()));
+            }
         }
-        return getPostings(term).size();
+        return stats;
+    }
+
+    /**
+     * Get the statistics of the given term in this segment.
+     * @param term
+     * @return statistics of the term, null if the term is not found
+     */
+    private TermStats getSegmentTermStats(String term) {
+        int termIndex = binarySearchTermIndex(term);
+        if (termIndex < 0) {
+            return null;
+        }
+        if (mDocumentFrequencies != null) {
+            return new TermStats(mDocumentFrequencies[termIndex],
+                    mCollectionFrequencies[termIndex], mMaxTermFrequencies[termIndex]);
+        }
+        List<DiskPosting> postings = readPostings(termIndex, false);
+        if (postings == null) {
+            return null;
+        }
+        long collectionFrequency = 0;
+        int maxTermFrequency = 0;
+        for (DiskPosting posting : postings) {
+            collectionFrequency += posting.getTermFrequency();
+            maxTermFrequency = Math.max(maxTermFrequency, posting.getTermFrequency());
+        }
+        return new TermStats(postings.size(), collectionFrequency, maxTermFrequency);
     }
 
     /**
      * Reads and returns a list of document IDs that contain the given term.
+     * The list may be shared through the postings cache and cannot be modified.
      * @param term
      * @return list of disk postings, null if the term is not found
      */
     public List<DiskPosting> getPostings(String term) {
-        long postingsPosition = binarySearchVocabulary(term);
-        if (postingsPosition >= 0) {
-            return readPostingsFromFile(mPostings, postingsPosition, false);
-        }
-        return null;
+        return readCombinedPostings(term, false);
     }
 
     /**
      * Reads and returns a list of document IDs, term frequencies, 
      * and positions that contain the given term. For use with phrase queries.
+     * The list may be shared through the postings cache and cannot be modified.
      * @param term
      * @return list of disk postings, null if the term is not found
      */
     public List<DiskPosting> getPostingsWithPositions(String term) {
-        long postingsPosition = binarySearchVocabulary(term);
-        if (postingsPosition >= 0) {
-            return readPostingsFromFile(mPostings, postingsPosition, true);
+        return readCombinedPostings(term, true);
+    }
+
+    /**
+     * Read the postings of the given term in all segments. The postings of
+     * the deltas follow the ones of the base segment.
+     * @param term
+     * @param withPositions
+     * @return list of disk postings, null if the term is not found
+     */
+    private List<DiskPosting> readCombinedPostings(String term, boolean withPositions) {
+        List<DiskPosting> postings = readSegmentPostings(term, withPositions);
+        List<DiskPosting> combinedPostings = null;
+        for (DiskInvertedIndex delta : mDeltas) {
+            List<DiskPosting> deltaPostings = delta.readSegmentPostings(term, withPositions);
+            if (deltaPostings != null) {
+                if (combinedPostings == null) {
+                    combinedPostings = postings == null
+                            ? new ArrayList<DiskPosting>() : new ArrayList<DiskPosting>(postings);
+                }
+                combinedPostings.addAll(deltaPostings);
+            }
+        }
+        return combinedPostings == null ? postings : Collections.unmodifiableList(combinedPostings);
+    }
+
+    /**
+     * Read the postings of the given term in this segment.
+     * @param term
+     * @param withPositions
+     * @return list of disk postings, null if the term is not found
+     */
+    private List<DiskPosting> readSegmentPostings(String term, boolean withPositions) {
+        int termIndex = binarySearchTermIndex(term);
+        if (termIndex >= 0) {
+            return readPostings(termIndex, withPositions);
         }
         return null;
     }
 
     /**
-     * Reads the file vocabTable.bin into memory.
-     * @param indexName
-     * @return byte position of vocabulary
+     * Get the cache of the decoded postings lists, for its statistics.
+     * @return postings cache
      */
-    private static long[] readVocabTable(String indexName) {
-        try {
-            long[] vocabTable;
+    public PostingsCache getPostingsCache() {
+        return mPostingsCache;
+    }
 
-            RandomAccessFile tableFile = new RandomAccessFile(new File(indexName, "vocabTable.bin"), "r");
+    /**
+     * Replace the cache of the decoded postings lists, for example with one
+     * of a different budget.
+     * @param postingsCache
+     */
+    public void setPostingsCache(PostingsCache postingsCache) {
+        mPostingsCache = postingsCache;
+        for (DiskInvertedIndex delta : mDeltas) {
+            delta.mPostingsCache = postingsCache;
+        }
+    }
 
-            byte[] byteBuffer = new byte[4];
-            tableFile.read(byteBuffer, 0, byteBuffer.length);
+    /**
+     * Opens a cursor over the document IDs and term frequencies of the given
+     * term that can skip ahead without decoding the whole postings list.
+     * @param term
+     * @return postings cursor, null if the term is not found
+     */
+    public PostingsCursor getPostingsCursor(String term) {
+        return getCombinedPostingsCursor(term, false);
+    }
 
-            int tableIndex = 0;
-            vocabTable = new long[ByteBuffer.wrap(byteBuffer).getInt() * 2];
-            byteBuffer = new byte[8];
+    /**
+     * Opens a cursor over the postings of the given term that also decodes
+     * their positions, one posting at a time. For use with phrase queries.
+     * @param term
+     * @return postings cursor, null if the term is not found
+     */
+    public PostingsCursor getPositionsCursor(String term) {
+        return getCombinedPostingsCursor(term, true);
+    }
 
-            while (tableFile.read(byteBuffer, 0, byteBuffer.length) > 0) { // while we keep reading 4 bytes
-                vocabTable[tableIndex] = ByteBuffer.wrap(byteBuffer).getLong();
-                tableIndex++;
+    /**
+     * Opens a cursor over the postings of the given term in all segments.
+     * @param term
+     * @param withPositions
+     * @return postings cursor, null if the term is not found
+     */
+    private PostingsCursor getCombinedPostingsCursor(String term, boolean withPositions) {
+        PostingsCursor cursor = getSegmentPostingsCursor(term, withPositions);
+        for (DiskInvertedIndex delta : mDeltas) {
+            PostingsCursor deltaCursor = delta.getSegmentPostingsCursor(term, withPositions);
+            if (cursor == null) {
+                cursor = deltaCursor;
+            } else if (deltaCursor != null) {
+                cursor.append(deltaCursor);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Opens a cursor over the postings of the given term in this segment.
+     * @param term
+     * @return postings cursor, null if the term is not found
+     */
+    PostingsCursor getSegmentPostingsCursor(String term) {
+        return getSegmentPostingsCursor(term, false);
+    }
+
+    /**
+     * Opens a cursor over the postings of the given term in this segment.
+     * @param term
+     * @param withPositions
+     * @return postings cursor, null if the term is not found
+     */
+    PostingsCursor getSegmentPostingsCursor(String term, boolean withPositions) {
+        int termIndex = binarySearchTermIndex(term);
+        if (termIndex >= 0) {
+            try {
+                ByteBuffer positions = withPositions && mFormat != FORMAT_FIXED
+                        ? readPositionsRecord(termIndex) : null;
+                return new PostingsCursor(readPostingsRecord(termIndex), mFormat, mLiveDocs,
+                        withPositions, positions);
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
             }
-            tableFile.close();
-            return vocabTable;
-        } catch (FileNotFoundException ex) {
-            System.out.println(ex.toString());
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
         }
         return null;
     }
 
+    /**
+     * @param first
+     * @param second
+     * @return true if every segment has a biword index of the pair, so the
+     * documents in which the first term is followed by the second are found
+     * without their positional postings
+     */
+    public boolean hasBiword(String first, String second) {
+        for (DiskInvertedIndex segment : getSegments()) {
+            if (segment.mBiwords == null || !segment.mBiwords.covers(first, second)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of documents in which the first term is followed by the
+     * second, from the biword index.
+     * @param first
+     * @param second
+     * @return document frequency of the pair, 0 if it is not found
+     */
+    public int getBiwordFrequency(String first, String second) {
+        int documentFrequency = 0;
+        for (DiskInvertedIndex segment : getSegments()) {
+            if (segment.mBiwords != null) {
+                documentFrequency += segment.mBiwords.getDocumentFrequency(first, second);
+            }
+        }
+        return documentFrequency;
+    }
+
+    /**
+     * Opens a cursor over the documents in which the first term is followed
+     * by the second, with the positions of the first term. Only for pairs of
+     * which hasBiword() is true.
+     * @param first
+     * @param second
+     * @return postings cursor, null if the pair is not found
+     */
+    public PostingsCursor getBiwordCursor(String first, String second) {
+        PostingsCursor cursor = null;
+        for (DiskInvertedIndex segment : getSegments()) {
+            PostingsCursor segmentCursor = segment.mBiwords == null
+                    ? null : segment.mBiwords.getCursor(first, second, segment.mLiveDocs);
+            if (cursor == null) {
+                cursor = segmentCursor;
+            } else if (segmentCursor != null) {
+                cursor.append(segmentCursor);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the terms whose pairs are in the biword index of the segment,
+     * null if it has none
+     */
+    String[] getBiwordTerms() {
+        return mBiwords == null ? null : mBiwords.getTerms();
+    }
+
+    /**
+     * @return true if the index has score bounds for its terms
+     */
+    public boolean hasScoreBounds() {
+        for (DiskInvertedIndex delta : mDeltas) {
+            if (!delta.hasScoreBounds()) {
+                return false;
+            }
+        }
+        return mScoreBounds != null;
+    }
+
+    /**
+     * Get the highest weight of the term in a document divided by the length
+     * of the document, as calculated by the given formula. Multiplied by the
+     * weight of the term for the query it bounds the share of the term in
+     * the score of any document. The bound of a term in several segments is
+     * the highest of its bounds.
+     * @param term
+     * @param form
+     * @return score bound of the term, 0 if the term is not found
+     */
+    public double getScoreBound(String term, FormEnum form) {
+        double scoreBound = 0;
+        int termIndex = binarySearchTermIndex(term);
+        if (termIndex >= 0 && mScoreBounds != null) {
+            scoreBound = mScoreBounds[termIndex * FormEnum.values().length + form.ordinal()];
+        }
+        for (DiskInvertedIndex delta : mDeltas) {
+            scoreBound = Math.max(scoreBound, delta.getScoreBound(term, form));
+        }
+        return scoreBound;
+    }
+
+    /**
+     * Intersect a postings list with the postings of the given term. The
+     * postings of the term are skipped over up to the next document of the
+     * list, so the cost depends on the length of the list rather than on the
+     * document frequency of the term.
+     * @param postings postings in document ID order
+     * @param term
+     * @return the postings of the list whose document contains the term
+     */
+    public List<DiskPosting> intersectPostings(List<DiskPosting> postings, String term) {
+        List<DiskPosting> result = new ArrayList<DiskPosting>();
+        PostingsCursor cursor = getPostingsCursor(term);
+        if (cursor == null) {
+            return result;
+        }
+        for (DiskPosting posting : postings) {
+            if (!cursor.advance(posting.getDocumentID())) {
+                break;
+            }
+            if (cursor.getDocumentID() == posting.getDocumentID()) {
+                result.add(posting);
+            }
+        }
+        return result;
+    }
+
     /**
      * Reads the file corpusSize.bin into memory.
      * @param indexName
@@ -196,91 +840,163 @@ public class DiskInvertedIndex extends DiskIndex {
     }
 
     /**
-     * Read the document weight from the weight file
-     * @param docId
-     * @return document weight
+     * Reads the weight, length, byte size and average term frequency of every
+     * document and the average document length of the corpus into memory, so
+     * scoring never reads the weights file.
+     * @param weightsFile
+     * @param mode
      */
-    public Double getDocWeight(int docId) {
+    private void readDocStatistics(File weightsFile, IndexReaderMode mode) {
+        mDocWeights = new double[mCorpusSize];
+        mDocLengths = new double[mCorpusSize];
+        mDocSizes = new double[mCorpusSize];
+        mAvgTermFrequencies = new double[mCorpusSize];
         try {
-            mWeightList.seek(docId * 32);
-            byte[] buffer = new byte[8];
-            mWeightList.read(buffer, 0, buffer.length);
-            return ByteBuffer.wrap(buffer).getDouble();
+            ByteSource weights = ByteSource.open(weightsFile, mode);
+            try {
+                ByteBuffer buffer = weights.read(0, (int) weights.length());
+                for (int docId = 0; docId < mCorpusSize; docId++) {
+                    mDocWeights[docId] = buffer.getDouble();
+                    mDocLengths[docId] = buffer.getDouble();
+                    mDocSizes[docId] = buffer.getDouble();
+                    mAvgTermFrequencies[docId] = buffer.getDouble();
+                }
+                mAvgDocLength = buffer.getDouble();
+            } finally {
+                weights.close();
+            }
         } catch (IOException ex) {
             System.out.println(ex.toString());
         }
-        return null;
     }
 
     /**
-     * Read the document length from the weight file
+     * Get the document weight
+     * @param docId
+     * @return document weight
+     */
+    public double getDocWeight(int docId) {
+        return mDocWeights[docId];
+    }
+
+    /**
+     * Get the document length
      * @param docId
      * @return document length
      */
-    public Double getDocLength(int docId) {
-        try {
-            mWeightList.seek((docId * 32) + 8);
-            byte[] buffer = new byte[8];
-            mWeightList.read(buffer, 0, buffer.length);
-            return ByteBuffer.wrap(buffer).getDouble();
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
-        }
-        return null;
+    public double getDocLength(int docId) {
+        return mDocLengths[docId];
     }
 
     /**
-     * Read the document byte size from the weight file
+     * Get the document byte size
      * @param docId
      * @return document byte size
      */
-    public Double getDocSize(int docId) {
-        try {
-            mWeightList.seek((docId * 32) + 16);
-            byte[] buffer = new byte[8];
-            mWeightList.read(buffer, 0, buffer.length);
-            return ByteBuffer.wrap(buffer).getDouble();
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
-        }
-        return null;
+    public double getDocSize(int docId) {
+        return mDocSizes[docId];
     }
 
     /**
-     * Read the average term frequency from the weight file
+     * Get the average term frequency of the document
      * @param docId
      * @return document term frequency
      */
-    public Double getAvgTermFrequency(int docId) {
-        try {
-            mWeightList.seek((docId * 32) + 24);
-            byte[] buffer = new byte[8];
-            mWeightList.read(buffer, 0, buffer.length);
-            return ByteBuffer.wrap(buffer).getDouble();
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
-        }
-        return null;
+    public double getAvgTermFrequency(int docId) {
+        return mAvgTermFrequencies[docId];
     }
 
     /**
-     * Read the average document length of the corpus from the weight file
+     * Get the average document length of the corpus
      * @return average document length of the corpus
      */
-    public Double getAvgDocLength() {
-        try {
-            mWeightList.seek(mCorpusSize * 32);
-            byte[] buffer = new byte[8];
-            mWeightList.read(buffer, 0, buffer.length);
-            return ByteBuffer.wrap(buffer).getDouble();
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
-        }
-        return null;
+    public double getAvgDocLength() {
+        return mAvgDocLength;
     }
 
     public int getCorpusSize() {
         return mCorpusSize;
     }
 
+    /**
+     * Get the terms of all segments of the index.
+     * @return array of index terms
+     */
+    @Override
+    public synchronized String[] getDictionary() {
+        if (mDeltas.isEmpty()) {
+            return super.getDictionary();
+        }
+        if (mCombinedDictionary == null) {
+            SortedSet<String> terms = new TreeSet<String>(Arrays.asList(super.getDictionary()));
+            for (DiskInvertedIndex delta : mDeltas) {
+                terms.addAll(Arrays.asList(delta.getDictionary()));
+            }
+            mCombinedDictionary = terms.toArray(new String[0]);
+        }
+        return mCombinedDictionary;
+    }
+
+    /**
+     * @return the terms of this segment
+     */
+    String[] getSegmentDictionary() {
+        return super.getDictionary();
+    }
+
+    @Override
+    public int getTermCount() {
+        return mDeltas.isEmpty() ? super.getTermCount() : getDictionary().length;
+    }
+
+    /**
+     * @return the base segment followed by the delta segments
+     */
+    List<DiskInvertedIndex> getSegments() {
+        List<DiskInvertedIndex> segments = new ArrayList<DiskInvertedIndex>();
+        segments.add(this);
+        segments.addAll(mDeltas);
+        return segments;
+    }
+
+    /**
+     * @return true if the document was deleted from the index
+     * @param docId
+     */
+    public boolean isDeleted(int docId) {
+        return mLiveDocs != null && !mLiveDocs.isLive(docId);
+    }
+
+    /**
+     * @return number of deleted documents that are not compacted yet
+     */
+    public int getDeletedCount() {
+        return mLiveDocs == null ? 0 : mLiveDocs.getDeletedCount();
+    }
+
+    /**
+     * @return folder of the index files of the segment
+     */
+    File getFolder() {
+        return mFolder;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (DiskInvertedIndex delta : mDeltas) {
+            delta.close();
+        }
+        if (mBiwords != null) {
+            mBiwords.close();
+        }
+        try {
+            if (mPositions != null) {
+                mPositions.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
 }
@@ -0,0 +1,343 @@
+package indexes.diskPart;
+
+import indexes.KGramIndex;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * K-gram index on disk. The vocabulary types are numbered in their sorted
+ * order, and every 1-, 2- and 3-gram maps to the sorted IDs of the types
+ * that contain it, so the lists of k-grams are merged as int arrays and a
+ * type is only decoded when it is needed. The file is read in place, with
+ * the reader mode of the other index files.
+ *
+ * File layout, big-endian:
+ * int MAGIC, int type count, int k-gram count,
+ * the byte offset of every type in the type bytes followed by their end,
+ * the byte offset of every k-gram in the k-gram bytes followed by their end,
+ * the index of the first type ID of every k-gram followed by their end,
+ * the type IDs of all k-grams, the UTF-8 type bytes and the UTF-8 k-gram
+ * bytes. The k-grams are sorted by their bytes.
+ */
+public class DiskKGramIndex {
+
+    // file of the k-gram index in the index folder
+    static final String FILE = "kGrams.bin";
+    // serialized KGramIndex of indexes built before, converted when it is opened
+    static final String LEGACY_FILE = "kGramIndex.bin";
+
+    private static final int MAGIC = 0x4B475231; // "KGR1"
+    private static final int HEADER_BYTES = 12;
+
+    // unsigned byte order of the UTF-8 k-grams, the order of the file
+    private static final Comparator<byte[]> BYTE_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] b1, byte[] b2) {
+            int n = Math.min(b1.length, b2.length);
+            for (int i = 0; i < n; i++) {
+                int c = (b1[i] & 0xff) - (b2[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return b1.length - b2.length;
+        }
+    };
+
+    private ByteSource mSource;
+    private int mTypeCount;
+    private int mKGramCount;
+    // byte positions of the sections of the file
+    private long mTypeOffsetsPosition;
+    private long mKGramOffsetsPosition;
+    private long mIdOffsetsPosition;
+    private long mIdsPosition;
+    private long mTypeBytesPosition;
+    private long mKGramBytesPosition;
+
+    /**
+     * Opens the k-gram index of the corpus in the given path, with the
+     * reader mode set by the system property index.reader.
+     * @param path
+     */
+    public DiskKGramIndex(String path) {
+        this(path, IndexReaderMode.getDefault());
+    }
+
+    /**
+     * Opens the k-gram index of the corpus in the given path.
+     * @param path
+     * @param mode how the file is read
+     */
+    public DiskKGramIndex(String path, IndexReaderMode mode) {
+        this(new File(path, "Indexes"), mode);
+    }
+
+    /**
+     * Opens the k-gram index in an index folder. A serialized KGramIndex of
+     * an older index is converted in memory.
+     * @param indexFolder
+     * @param mode how the file is read
+     */
+    DiskKGramIndex(File indexFolder, IndexReaderMode mode) {
+        try {
+            File file = new File(indexFolder, FILE);
+            File legacyFile = new File(indexFolder, LEGACY_FILE);
+            if (!file.exists() && legacyFile.exists()) {
+                mSource = new MappedByteSource(convertLegacyFile(legacyFile));
+            } else {
+                mSource = ByteSource.open(file, mode);
+            }
+            ByteBuffer header = mSource.read(0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a k-gram index");
+            }
+            mTypeCount = header.getInt();
+            mKGramCount = header.getInt();
+            mTypeOffsetsPosition = HEADER_BYTES;
+            mKGramOffsetsPosition = mTypeOffsetsPosition + 4L * (mTypeCount + 1);
+            mIdOffsetsPosition = mKGramOffsetsPosition + 4L * (mKGramCount + 1);
+            mIdsPosition = mIdOffsetsPosition + 4L * (mKGramCount + 1);
+            mTypeBytesPosition = mIdsPosition + 4L * mSource.getInt(mIdOffsetsPosition + 4L * mKGramCount);
+            mKGramBytesPosition = mTypeBytesPosition + mSource.getInt(mTypeOffsetsPosition + 4L * mTypeCount);
+        } catch (FileNotFoundException ex) {
+            System.out.println(ex.toString());
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+            mTypeCount = 0;
+            mKGramCount = 0;
+        }
+    }
+
+    /**
+     * Get the IDs of the types that contain a k-gram.
+     * @param kgram 1-, 2- or 3-gram, '$' marks the beginning or end of a type
+     * @return the sorted type IDs, null if no type contains the k-gram
+     */
+    public int[] getTypeIds(String kgram) {
+        try {
+            int kgramIndex = findKGram(kgram.getBytes(StandardCharsets.UTF_8));
+            if (kgramIndex < 0) {
+                return null;
+            }
+            ByteBuffer offsets = mSource.read(mIdOffsetsPosition + 4L * kgramIndex, 8);
+            int start = offsets.getInt();
+            int[] typeIds = new int[offsets.getInt() - start];
+            mSource.read(mIdsPosition + 4L * start, 4 * typeIds.length).asIntBuffer().get(typeIds);
+            return typeIds;
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Get the types that contain a k-gram.
+     * @param kgram
+     * @return the sorted types, null if no type contains the k-gram
+     */
+    public List<String> getPostingsList(String kgram) {
+        int[] typeIds = getTypeIds(kgram);
+        if (typeIds == null) {
+            return null;
+        }
+        List<String> types = new ArrayList<String>(typeIds.length);
+        for (int typeId : typeIds) {
+            types.add(getType(typeId));
+        }
+        return types;
+    }
+
+    /**
+     * Get a vocabulary type by its ID.
+     * @param typeId
+     * @return the type
+     */
+    public String getType(int typeId) {
+        try {
+            ByteBuffer offsets = mSource.read(mTypeOffsetsPosition + 4L * typeId, 8);
+            int start = offsets.getInt();
+            int end = offsets.getInt();
+            return StandardCharsets.UTF_8.decode(mSource.read(mTypeBytesPosition + start, end - start)).toString();
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Get all vocabulary types, reading their bytes at once.
+     * @return the types in the order of their IDs
+     */
+    String[] getTypes() throws IOException {
+        if (mSource == null) {
+            return new String[0];
+        }
+        String[] types = new String[mTypeCount];
+        int[] offsets = new int[mTypeCount + 1];
+        mSource.read(mTypeOffsetsPosition, 4 * offsets.length).asIntBuffer().get(offsets);
+        byte[] typeBytes = new byte[offsets[mTypeCount]];
+        mSource.read(mTypeBytesPosition, typeBytes.length).get(typeBytes);
+        for (int typeId = 0; typeId < mTypeCount; typeId++) {
+            types[typeId] = new String(typeBytes, offsets[typeId], offsets[typeId + 1] - offsets[typeId],
+                    StandardCharsets.UTF_8);
+        }
+        return types;
+    }
+
+    /**
+     * @return number of vocabulary types, the IDs are 0 to the count - 1
+     */
+    public int getTypeCount() {
+        return mTypeCount;
+    }
+
+    /**
+     * Close the file of the index.
+     */
+    public void close() {
+        try {
+            if (mSource != null) {
+                mSource.close();
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
+    /**
+     * Binary search of a k-gram, comparing the bytes in the file.
+     * @param key UTF-8 bytes of the k-gram
+     * @return index of the k-gram, -1 if it is not found
+     */
+    private int findKGram(byte[] key) throws IOException {
+        int low = 0;
+        int high = mKGramCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            ByteBuffer offsets = mSource.read(mKGramOffsetsPosition + 4L * middle, 8);
+            int start = offsets.getInt();
+            int length = offsets.getInt() - start;
+            ByteBuffer kgram = mSource.read(mKGramBytesPosition + start, length);
+            int compareValue = 0;
+            for (int i = 0; i < Math.min(length, key.length) && compareValue == 0; i++) {
+                compareValue = (kgram.get(i) & 0xff) - (key[i] & 0xff);
+            }
+            if (compareValue == 0) {
+                compareValue = length - key.length;
+            }
+            if (compareValue < 0) {
+                low = middle + 1;
+            } else if (compareValue > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a k-gram index in the format of the file.
+     * @param out
+     * @param types the vocabulary types in sorted order
+     * @param kIndex in-memory k-gram index of the types
+     */
+    static void write(OutputStream out, String[] types, KGramIndex kIndex) throws IOException {
+        String[] kgrams = kIndex.getDictionary();
+        byte[][] kgramBytes = new byte[kgrams.length][];
+        for (int i = 0; i < kgrams.length; i++) {
+            kgramBytes[i] = kgrams[i].getBytes(StandardCharsets.UTF_8);
+        }
+        // the k-grams are found by their bytes
+        Integer[] order = new Integer[kgrams.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return BYTE_ORDER.compare(kgramBytes[i1], kgramBytes[i2]);
+            }
+        });
+        byte[][] typeBytes = new byte[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            typeBytes[i] = types[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        DataOutputStream file = new DataOutputStream(out);
+        file.writeInt(MAGIC);
+        file.writeInt(types.length);
+        file.writeInt(kgrams.length);
+        int offset = 0;
+        for (byte[] type : typeBytes) {
+            file.writeInt(offset);
+            offset += type.length;
+        }
+        file.writeInt(offset);
+        offset = 0;
+        for (int i : order) {
+            file.writeInt(offset);
+            offset += kgramBytes[i].length;
+        }
+        file.writeInt(offset);
+        offset = 0;
+        for (int i : order) {
+            file.writeInt(offset);
+            offset += kIndex.getPostingsList(kgrams[i]).size();
+        }
+        file.writeInt(offset);
+        for (int i : order) {
+            // the types of a k-gram are sorted, so are their IDs
+            for (String type : kIndex.getPostingsList(kgrams[i])) {
+                file.writeInt(Arrays.binarySearch(types, type));
+            }
+        }
+        for (byte[] type : typeBytes) {
+            file.write(type);
+        }
+        for (int i : order) {
+            file.write(kgramBytes[i]);
+        }
+        file.flush();
+    }
+
+    /**
+     * Convert a serialized KGramIndex to the format of the file.
+     * @param legacyFile
+     * @return bytes of the converted index
+     */
+    private static ByteBuffer convertLegacyFile(File legacyFile) throws IOException {
+        try (ObjectInputStream objectIn = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(legacyFile)))) {
+            KGramIndex kIndex = (KGramIndex) objectIn.readObject();
+            // every type is in the list of the 2-gram of its first character
+            List<String> types = new ArrayList<String>();
+            for (String kgram : kIndex.getDictionary()) {
+                if (kgram.length() == 2 && kgram.charAt(0) == '$') {
+                    types.addAll(kIndex.getPostingsList(kgram));
+                }
+            }
+            String[] sortedTypes = types.toArray(new String[0]);
+            Arrays.sort(sortedTypes);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(bytes, sortedTypes, kIndex);
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex.toString());
+        }
+    }
+}
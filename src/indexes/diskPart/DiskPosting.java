@@ -1,30 +1,31 @@
 package indexes.diskPart;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
- * Class to represent a positional posting on disk.
+ * Class to represent a positional posting on disk. The positions are kept
+ * in an int array instead of a list of boxed integers.
  *
  */
 public class DiskPosting implements Comparable<DiskPosting> {
 
     private int documentID;
     private int termFrequency;
-    private List<Integer> positions = new ArrayList<Integer>();
-    
-    DiskPosting(){}
+    private int[] positions;
+    private int positionCount; // number of positions in the positions array
 
     public DiskPosting(int documentID, int termFrequency, int position) {
         this.documentID = documentID;
         this.termFrequency = termFrequency;
-        this.positions.add(position);
+        this.positions = new int[]{position};
+        this.positionCount = 1;
     }
     
-    DiskPosting(int documentID, int termFrequency, List<Integer> positions) {
+    DiskPosting(int documentID, int termFrequency, int[] positions) {
           this.documentID = documentID;
           this.termFrequency = termFrequency;
           this.positions = positions;
+          this.positionCount = positions.length;
     }
 
     public DiskPosting(int documentID, int termFrequency) {
@@ -62,21 +63,27 @@ public class DiskPosting implements Comparable<DiskPosting> {
     }
 
     /**
-     * @return the positions
+     * @return the number of positions, 0 if the positions were not read
      */
-    public List<Integer> getPositions() {
-        return positions;
+    public int getPositionCount() {
+        return positionCount;
     }
 
     /**
-     * @param positions the positions to set
+     * @param index index of the position, less than the position count
+     * @return the position
      */
-    public void setPositions(List<Integer> positions) {
-        this.positions = positions;
+    public int getPosition(int index) {
+        return positions[index];
     }
-    
+
     public void addPosition(int position){
-        this.positions.add(position);
+        if (positions == null) {
+            positions = new int[1];
+        } else if (positionCount == positions.length) {
+            positions = Arrays.copyOf(positions, positionCount * 2);
+        }
+        positions[positionCount++] = position;
     }
     
     @Override
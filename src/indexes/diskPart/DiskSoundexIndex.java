@@ -3,7 +3,6 @@ package indexes.diskPart;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.util.*;
 import indexes.SoundexIndex;
@@ -14,69 +13,60 @@ import indexes.SoundexIndex;
 public class DiskSoundexIndex extends DiskIndex {
 
     /**
-     * Opens a disk soundex index that was constructed in the given path.
+     * Opens a disk soundex index that was constructed in the given path,
+     * with the reader mode set by the system property index.reader.
      * @param path 
      */
     public DiskSoundexIndex(String path) {
+        this(path, IndexReaderMode.getDefault());
+    }
+
+    /**
+     * Opens a disk soundex index that was constructed in the given path.
+     * @param path 
+     * @param mode how the index files are read
+     */
+    public DiskSoundexIndex(String path, IndexReaderMode mode) {
         try {
             String pathIndexes = path + "//Indexes";
-            mVocabList = new RandomAccessFile(new File(pathIndexes, "sVocab.bin"), "r");
-            mPostings = new RandomAccessFile(new File(pathIndexes, "soundex.bin"), "r");
-            mVocabTable = readVocabTable(pathIndexes);
-            mFileNames = readFileNames(path);
+            mVocabList = ByteSource.open(new File(pathIndexes, "sVocab.bin"), mode);
+            mPostings = ByteSource.open(new File(pathIndexes, "soundex.bin"), mode);
+            mVocabTable = readVocabTable(new File(pathIndexes, "sVocabTable.bin"), mode);
+            readTermDictionary();
+            File indexFolder = new File(pathIndexes);
+            List<File> segmentFolders = new ArrayList<File>();
+            segmentFolders.add(indexFolder);
+            segmentFolders.addAll(DiskInvertedIndex.findDeltaFolders(indexFolder));
+            mDocumentTable = DocumentTable.open(segmentFolders, mode);
+            // indexes built before the document table walk the corpus
+            mFileNames = mDocumentTable != null ? mDocumentTable : readFileNames(path);
+            mLiveDocs = LiveDocs.read(indexFolder);
         } catch (FileNotFoundException ex) {
             System.out.println(ex.toString());
         }
     }
 
     /**
-     * Read the postings from file
-     * @param postings
-     * @param postingsPosition
-     * @return list of disk postings
+     * Decode the postings record of a soundex code, without the deleted
+     * documents.
+     * @param buffer the postings record
+     * @param liveDocs the live documents of the index, null if no document is
+     * deleted
+     * @return list of document IDs
      */
-    private static List<Integer> readPostingsFromFile(RandomAccessFile postings,      
-            long postingsPosition) {
-        try {
-            // seek to the position in the file where the postings start.
-            postings.seek(postingsPosition);
-
-            // read the 4 bytes for the document frequency
-            byte[] buffer = new byte[4];
-            postings.read(buffer, 0, buffer.length);
-
-            // use ByteBuffer to convert the 4 bytes into an int.
-            int documentFrequency = ByteBuffer.wrap(buffer).getInt();
-            
-            // initialize the array that will hold the postings.
-            List<Integer> diskPostings = new ArrayList<Integer>(documentFrequency);
-           
-            // write the following code:
-            //
-            // read 4 bytes at a time from the file, until you have read as many
-            // postings as the document frequency promised.
-            //    
-            // after each read, convert the bytes to an int posting. this value
-            // is the GAP since the last posting. decode the document ID from
-            // the gap and put it in the array.
-            //
-            // repeat until all postings are read.
-            int lastDocId = 0;
-            for (int postingIndex = 0; postingIndex < documentFrequency; postingIndex++) {
-
-                // read the 4 bytes for the docId; add lastDocId to decode gap
-                postings.read(buffer, 0, buffer.length);
-                int docId = ByteBuffer.wrap(buffer).getInt() + lastDocId;
-                lastDocId = docId;
-
+    private static List<Integer> decodePostings(ByteBuffer buffer, LiveDocs liveDocs) {
+        int documentFrequency = buffer.getInt();
+        List<Integer> diskPostings = new ArrayList<Integer>(documentFrequency);
+        int lastDocId = 0;
+        for (int postingIndex = 0; postingIndex < documentFrequency; postingIndex++) {
+            // read the docId; add lastDocId to decode gap
+            int docId = buffer.getInt() + lastDocId;
+            lastDocId = docId;
+            if (liveDocs == null || liveDocs.isLive(docId)) {
                 diskPostings.add(docId);
             }
-
-            return diskPostings;
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
         }
-        return null;
+        return diskPostings;
     }
 
     /**
@@ -86,44 +76,24 @@ public class DiskSoundexIndex extends DiskIndex {
      */
     public List<Integer> getPostings(String term) {
         SoundexIndex reducer = new SoundexIndex();
-        String sTerm = reducer.reduceToSoundex(term);
-        long postingsPosition = binarySearchVocabulary(sTerm);
-        if (postingsPosition >= 0) {
-            return readPostingsFromFile(mPostings, postingsPosition);
-        }
-        return null;
+        return getCodePostings(reducer.reduceToSoundex(term));
     }
 
     /**
-     * Reads the file vocabTable.bin into memory.
-     * @param indexName
-     * @return byte position of vocabulary
+     * Reads and returns the list of document IDs of a soundex code.
+     * @param soundexCode
+     * @return list of disk postings, null if the code is not found
      */
-    private static long[] readVocabTable(String indexName) {
-        try {
-            long[] vocabTable;
-
-            RandomAccessFile tableFile = new RandomAccessFile(new File(indexName, "sVocabTable.bin"), "r");
-
-            byte[] byteBuffer = new byte[4];
-            tableFile.read(byteBuffer, 0, byteBuffer.length);
-
-            int tableIndex = 0;
-            vocabTable = new long[ByteBuffer.wrap(byteBuffer).getInt() * 2];
-            byteBuffer = new byte[8];
-
-            while (tableFile.read(byteBuffer, 0, byteBuffer.length) > 0) { // while we keep reading 4 bytes
-                vocabTable[tableIndex] = ByteBuffer.wrap(byteBuffer).getLong();
-                tableIndex++;
+    List<Integer> getCodePostings(String soundexCode) {
+        int termIndex = binarySearchTermIndex(soundexCode);
+        if (termIndex >= 0) {
+            try {
+                return decodePostings(readPostingsRecord(termIndex), mLiveDocs);
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
             }
-            tableFile.close();
-            return vocabTable;
-        } catch (FileNotFoundException ex) {
-            System.out.println(ex.toString());
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
         }
         return null;
-    }  
+    }
     
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package indexes.diskPart;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Table of the documents of an index, by their document IDs. Every segment
+ * of the index has two files: the paths file with the UTF-8 paths of its
+ * documents relative to the corpus folder, separated by '/', and the
+ * offsets file with the byte offset of every path in the paths file
+ * followed by the end of the last path, 8 bytes each.
+ *
+ * The list holds the file names of the documents, getPath() returns their
+ * paths. Opening the table only reads the lengths of the offsets files, the
+ * files of a segment are opened when the first of its documents is looked
+ * up.
+ */
+final class DocumentTable extends AbstractList<String> implements RandomAccess {
+
+    // files of the table in the folder of a segment
+    static final String OFFSETS_FILE = "docOffsets.bin";
+    static final String PATHS_FILE = "docPaths.bin";
+
+    private final File[] mFolders; // folders of the segments in document ID order
+    private final IndexReaderMode mMode;
+    private final int[] mFirstDocIds; // first document ID of every segment, followed by the number of documents
+    private final ByteSource[] mOffsets; // null until the segment is looked up
+    private final ByteSource[] mPaths;
+
+    private DocumentTable(File[] folders, IndexReaderMode mode, int[] firstDocIds) {
+        mFolders = folders;
+        mMode = mode;
+        mFirstDocIds = firstDocIds;
+        mOffsets = new ByteSource[folders.length];
+        mPaths = new ByteSource[folders.length];
+    }
+
+    /**
+     * Opens the table of the documents of the given segments.
+     *
+     * @param folders folders of the segments in document ID order
+     * @param mode how the files are read
+     * @return the table, null if a segment has no table
+     */
+    static DocumentTable open(List<File> folders, IndexReaderMode mode) {
+        int[] firstDocIds = new int[folders.size() + 1];
+        for (int segment = 0; segment < folders.size(); segment++) {
+            File offsetsFile = new File(folders.get(segment), OFFSETS_FILE);
+            if (!offsetsFile.isFile() || !new File(folders.get(segment), PATHS_FILE).isFile()) {
+                return null;
+            }
+            firstDocIds[segment + 1] = firstDocIds[segment] + (int) (offsetsFile.length() / 8 - 1);
+        }
+        return new DocumentTable(folders.toArray(new File[0]), mode, firstDocIds);
+    }
+
+    /**
+     * Writes the table of the documents of a segment.
+     *
+     * @param folder folder of the segment
+     * @param documentPaths paths of the documents in document ID order
+     */
+    static void write(File folder, List<String> documentPaths) throws IOException {
+        try (DataOutputStream offsetsFile = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(folder, OFFSETS_FILE))));
+                BufferedOutputStream pathsFile = new BufferedOutputStream(
+                        new FileOutputStream(new File(folder, PATHS_FILE)))) {
+            long offset = 0;
+            for (String documentPath : documentPaths) {
+                byte[] bytes = documentPath.getBytes(StandardCharsets.UTF_8);
+                offsetsFile.writeLong(offset);
+                pathsFile.write(bytes);
+                offset += bytes.length;
+            }
+            offsetsFile.writeLong(offset);
+        }
+    }
+
+    /**
+     * Get the file name of a document.
+     *
+     * @param docId
+     * @return name of the file of the document
+     */
+    @Override
+    public String get(int docId) {
+        String path = getPath(docId);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Get the path of a document relative to the corpus folder.
+     *
+     * @param docId
+     * @return path of the document, separated by '/'
+     */
+    String getPath(int docId) {
+        if (docId < 0 || docId >= size()) {
+            throw new IndexOutOfBoundsException("document " + docId + " of " + size());
+        }
+        int segment = Arrays.binarySearch(mFirstDocIds, docId);
+        if (segment < 0) {
+            segment = -segment - 2;
+        } else {
+            // skip segments without documents
+            while (mFirstDocIds[segment + 1] == docId) {
+                segment++;
+            }
+        }
+        try {
+            openSegment(segment);
+            ByteBuffer offsets = mOffsets[segment].read(8L * (docId - mFirstDocIds[segment]), 16);
+            long start = offsets.getLong();
+            int length = (int) (offsets.getLong() - start);
+            return StandardCharsets.UTF_8.decode(mPaths[segment].read(start, length)).toString();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public int size() {
+        return mFirstDocIds[mFirstDocIds.length - 1];
+    }
+
+    /**
+     * Opens the files of a segment if it was not looked up yet.
+     *
+     * @param segment
+     */
+    private synchronized void openSegment(int segment) throws IOException {
+        if (mPaths[segment] == null) {
+            mOffsets[segment] = ByteSource.open(new File(mFolders[segment], OFFSETS_FILE), mMode);
+            mPaths[segment] = ByteSource.open(new File(mFolders[segment], PATHS_FILE), mMode);
+        }
+    }
+
+    /**
+     * Close the files of the table.
+     */
+    synchronized void close() throws IOException {
+        for (int segment = 0; segment < mFolders.length; segment++) {
+            if (mPaths[segment] != null) {
+                mOffsets[segment].close();
+                mPaths[segment].close();
+                mOffsets[segment] = null;
+                mPaths[segment] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package indexes.diskPart;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * In-memory dictionary of the sorted vocabulary terms, front coded as
+ * described in Introduction to Information Retrieval (Section 5.2.2). The
+ * terms are split into blocks of BLOCK_SIZE terms that are stored in one
+ * byte array. The first term of a block is stored completely, every other
+ * term as the length of the prefix it shares with the term before it and
+ * the remaining suffix. All lengths are variable byte encoded.
+ *
+ * A lookup does a binary search over the first terms of the blocks and
+ * scans one block. It compares the bytes directly and does not allocate,
+ * so the dictionary can be shared between threads.
+ */
+final class FrontCodedDictionary {
+
+    static final int BLOCK_SIZE = 16;
+
+    private final byte[] mData;
+    private final int[] mBlockOffsets; // position of the first term of every block
+    private final int mTermCount;
+
+    /**
+     * Builds the dictionary from the concatenated ASCII terms of a vocab file.
+     *
+     * @param vocab bytes of the vocab file
+     * @param vocabTable vocab table of the index, the term positions are at
+     * the even indices
+     */
+    FrontCodedDictionary(ByteBuffer vocab, long[] vocabTable) {
+        byte[] terms = new byte[vocab.remaining()];
+        vocab.get(terms);
+        mTermCount = vocabTable.length / 2;
+        mBlockOffsets = new int[(mTermCount + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        // every term needs at most two lengths of 5 bytes besides its own bytes
+        byte[] data = new byte[terms.length + mTermCount * 10];
+        int size = 0;
+        int previousStart = 0;
+        int previousLength = 0;
+        for (int termIndex = 0; termIndex < mTermCount; termIndex++) {
+            int start = (int) vocabTable[termIndex * 2];
+            int end = termIndex + 1 < mTermCount ? (int) vocabTable[(termIndex + 1) * 2] : terms.length;
+            int length = end - start;
+            int prefix = 0;
+            if (termIndex % BLOCK_SIZE == 0) {
+                mBlockOffsets[termIndex / BLOCK_SIZE] = size;
+            } else {
+                int n = Math.min(length, previousLength);
+                while (prefix < n && terms[start + prefix] == terms[previousStart + prefix]) {
+                    prefix++;
+                }
+                size = writeLength(prefix, data, size);
+            }
+            size = writeLength(length - prefix, data, size);
+            System.arraycopy(terms, start + prefix, data, size, length - prefix);
+            size += length - prefix;
+            previousStart = start;
+            previousLength = length;
+        }
+        mData = Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Locates the given term.
+     *
+     * @param term
+     * @return index of the term in the vocabulary, -1 if not found
+     */
+    int find(String term) {
+        // find the last block whose first term is not greater than the term
+        int i = 0, j = mBlockOffsets.length - 1, block = -1;
+        while (i <= j) {
+            int m = (i + j) >>> 1;
+            int position = mBlockOffsets[m];
+            int length = readLength(mData, position);
+            if (compareTerm(term, position + lengthSize(length), length) >= 0) {
+                block = m;
+                i = m + 1;
+            } else {
+                j = m - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+
+        int position = mBlockOffsets[block];
+        int length = readLength(mData, position);
+        position += lengthSize(length);
+        // number of leading characters the term shares with the previous term,
+        // which is smaller than the term
+        int matched = commonPrefix(term, 0, position, length);
+        if (matched == length && matched == term.length()) {
+            return block * BLOCK_SIZE;
+        }
+        position += length;
+
+        int blockEnd = Math.min(mTermCount, (block + 1) * BLOCK_SIZE);
+        for (int termIndex = block * BLOCK_SIZE + 1; termIndex < blockEnd; termIndex++) {
+            int prefix = readLength(mData, position);
+            position += lengthSize(prefix);
+            int suffix = readLength(mData, position);
+            position += lengthSize(suffix);
+            if (prefix < matched) {
+                // shares less with the term than the previous term: greater than the term
+                return -1;
+            }
+            if (prefix == matched) {
+                int common = commonPrefix(term, matched, position, suffix);
+                int newMatched = matched + common;
+                if (common == suffix) {
+                    if (newMatched == term.length()) {
+                        return termIndex;
+                    }
+                } else if (newMatched == term.length()
+                        || term.charAt(newMatched) < (mData[position + common] & 0xFF)) {
+                    return -1;
+                }
+                matched = newMatched;
+            }
+            // prefix > matched: differs from the term where the previous term does, still smaller
+            position += suffix;
+        }
+        return -1;
+    }
+
+    int getTermCount() {
+        return mTermCount;
+    }
+
+    /**
+     * Get the size of the dictionary in memory.
+     *
+     * @return number of bytes of the term data and the block index
+     */
+    long getByteSize() {
+        return mData.length + mBlockOffsets.length * 4L;
+    }
+
+    /**
+     * Compare the term to the stored bytes, in the order of String.compareTo.
+     */
+    private int compareTerm(String term, int position, int length) {
+        int common = commonPrefix(term, 0, position, length);
+        if (common < length && common < term.length()) {
+            return term.charAt(common) - (mData[position + common] & 0xFF);
+        }
+        return term.length() - length;
+    }
+
+    /**
+     * Count the characters of the term from the given offset on that are
+     * equal to the stored bytes.
+     */
+    private int commonPrefix(String term, int offset, int position, int length) {
+        int n = Math.min(term.length() - offset, length);
+        int k = 0;
+        while (k < n && term.charAt(offset + k) == (mData[position + k] & 0xFF)) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Write a variable byte encoded length at the given position.
+     *
+     * @return position after the length
+     */
+    private static int writeLength(int value, byte[] data, int position) {
+        for (int i = lengthSize(value) - 1; i > 0; i--) {
+            data[position++] = (byte) ((value >>> (7 * i)) & 0x7F);
+        }
+        data[position++] = (byte) ((value & 0x7F) | 0x80);
+        return position;
+    }
+
+    /**
+     * Read the variable byte encoded length at the given position.
+     */
+    private static int readLength(byte[] data, int position) {
+        int value = 0;
+        byte b;
+        while (((b = data[position++]) & 0x80) == 0) {
+            value = (value << 7) | b;
+        }
+        return (value << 7) | (b & 0x7F);
+    }
+
+    /**
+     * Number of bytes of the variable byte encoding of the value.
+     */
+    private static int lengthSize(int value) {
+        int bytes = 1;
+        while (bytes < 5 && (value >>> (7 * bytes)) != 0) {
+            bytes++;
+        }
+        return bytes;
+    }
+}
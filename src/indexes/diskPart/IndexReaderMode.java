@@ -0,0 +1,33 @@
+package indexes.diskPart;
+
+/**
+ * How the files of a disk index are read.
+ */
+public enum IndexReaderMode {
+
+    /**
+     * Seek and read the files with a RandomAccessFile.
+     */
+    RANDOM_ACCESS_FILE,
+    /**
+     * Map the files into memory and decode directly from the mapped buffers.
+     * Files that cannot be mapped are read with a RandomAccessFile.
+     */
+    MEMORY_MAPPED;
+
+    // system property to choose the mode, "raf" or "mmap"
+    public static final String PROPERTY = "index.reader";
+
+    /**
+     * Get the mode set with the system property index.reader, memory mapped
+     * if the property is not set.
+     * @return the default reader mode
+     */
+    public static IndexReaderMode getDefault() {
+        String mode = System.getProperty(PROPERTY, "mmap");
+        if (mode.equalsIgnoreCase("raf")) {
+            return RANDOM_ACCESS_FILE;
+        }
+        return MEMORY_MAPPED;
+    }
+}
@@ -1,7 +1,5 @@
 package indexes.diskPart;
 
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.file.FileVisitResult;
@@ -9,39 +7,89 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import helper.JsonDocument;
-import helper.PorterStemmer;
-import token.SimpleTokenStream;
-import token.TokenProcessorStream;
+import formulas.FormEnum;
+import formulas.Formula;
 import indexes.KGramIndex;
 import indexes.PositionalInvertedIndex;
-import indexes.PositionalPosting;
 import indexes.SoundexIndex;
 
 /**
- * Writes an inverted indexing of a directory to disk.
+ * Writes an inverted indexing of a directory to disk. The indexing runs as a
+ * pipeline: a reader stage walks the directory and reads the documents, a
+ * number of worker threads tokenize, stem and index contiguous document ID
+ * ranges into private partial indexes, and a merge stage combines the partial
+ * indexes into the final index files. Each worker is a single-pass in-memory
+ * indexer: as soon as its partial index uses up its share of the memory
+ * budget, it is written to disk as a sorted run and cleared. The runs are
+ * merged one posting at a time, so the merge holds a bounded buffer and not
+ * the postings of a term.
+ *
+ * The memory budget bounds the postings only, and the pairs of the biword
+ * indexes, which are flushed to runs the same way. The vocabulary types for
+ * the k-gram index and the authors for the soundex index stay in memory for
+ * the whole build; they grow with the vocabulary of the corpus, not with its
+ * number of postings. The default budget of a quarter of the heap leaves the
+ * rest of it for them and for the documents that are read ahead.
+ *
+ * Documents added to the directory later can be indexed into a delta segment
+ * without indexing the others again, and the deltas can be merged back into
+ * one segment. Documents are deleted by marking them in the bitmap of the
+ * live documents, and updated by indexing them again into a delta and
+ * deleting their old version. Merging the segments compacts the index, it
+ * drops the deleted documents.
+ *
+ * With the system property index.biwords every segment also gets a biword
+ * index of the adjacent pairs of the most frequent terms for phrase queries.
  */
 public class IndexWriter {
 
     private String mFolderPath;
-    private List<Map<String, Integer>> docTermFrequency; // term frequencies for a document
-    private List<Integer> docLength; // the number of tokens in each document
-    private List<Double> docByteSize; // byte size of each document
+    private long mMemoryBudget; // heap bytes the in-memory indexes may use before they are flushed
+    private int mThreadCount; // number of indexing workers
     private int corpusSize;
 
     /**
      * Constructs an IndexWriter object which is prepared to index the given
-     * folder.
+     * folder. A quarter of the maximum heap is used as memory budget and one
+     * worker is started for every available processor.
      *
      * @param folderPath Folder where to write the index
      */
     public IndexWriter(String folderPath) {
+        this(folderPath, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Constructs an IndexWriter object which is prepared to index the given
+     * folder with one worker for every available processor.
+     *
+     * @param folderPath Folder where to write the index
+     * @param memoryBudget heap bytes the in-memory index may use before it is
+     * written to disk as a run
+     */
+    public IndexWriter(String folderPath, long memoryBudget) {
+        this(folderPath, memoryBudget, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an IndexWriter object which is prepared to index the given
+     * folder.
+     *
+     * @param folderPath Folder where to write the index
+     * @param memoryBudget heap bytes the in-memory indexes of all workers may
+     * use before they are written to disk as runs
+     * @param threadCount number of worker threads that index documents
+     */
+    public IndexWriter(String folderPath, long memoryBudget, int threadCount) {
         mFolderPath = folderPath; // save the path
+        mMemoryBudget = memoryBudget;
+        mThreadCount = Math.max(1, threadCount);
         // create a new directory in the given path
         // this is good for searching later for the created files because we don´t have to search the whole corpus.
-        File dir = new File(folderPath + "\\Indexes");
+        File dir = new File(folderPath, "Indexes");
         // if the directory does not exist, create it
         if (!dir.exists()) {
             try {
@@ -50,39 +98,385 @@ public class IndexWriter {
                 //handle it
             }
         }
-        docTermFrequency = new ArrayList<Map<String, Integer>>();
-        docLength = new ArrayList<Integer>();
-        docByteSize = new ArrayList<Double>();
     }
 
     /**
-     * Builds and writes an inverted index to disk. Creates nine files which are
-     * dircribed in detail at the given position.
+     * Builds and writes an inverted index to disk. Creates ten files which are
+     * dircribed in detail at the given position. Delta segments of an earlier
+     * index are deleted, their documents are indexed again.
      */
     public void buildIndex() {
-        PositionalInvertedIndex index = new PositionalInvertedIndex();
+        String folder = mFolderPath + "//Indexes";
         KGramIndex kIndex = new KGramIndex();
         SortedSet<String> vocabTree = new TreeSet<String>();
         SoundexIndex sIndex = new SoundexIndex();
-        indexFile(Paths.get(mFolderPath), index, vocabTree, sIndex);
-        buildIndexForDirectory(index, mFolderPath + "//Indexes");
-        buildCorpusSizeFile(mFolderPath + "//Indexes");
-        buildKgramFile(mFolderPath + "//Indexes", vocabTree, kIndex);
-        buildWeightFile(mFolderPath + "//Indexes");
-        buildSoundexFile(mFolderPath + "//Indexes", sIndex);
+        for (File deltaFolder : DiskInvertedIndex.findDeltaFolders(new File(folder))) {
+            deleteFolder(deltaFolder);
+        }
+        try {
+            // document IDs are assigned in the order of the directory walk
+            List<File> files = findFiles(Paths.get(mFolderPath));
+            writeSegment(folder, files, 0, vocabTree, sIndex);
+        } catch (IOException | InterruptedException ex) {
+            System.out.println(ex.toString());
+        }
+        new File(folder, LiveDocs.FILE).delete();
+        buildScoreBoundsFiles(0);
+        buildBiwordFiles(0);
+        buildKgramFile(folder, vocabTree, kIndex);
+        buildSoundexFile(folder, sIndex);
     }
 
     /**
-     * Walk through all .json or .txt files in a directory and subdirectory and call a
-     * helper method to do the indexing.
+     * Indexes the documents that were added to the directory since the index
+     * was built into a new delta segment, without indexing the other
+     * documents again. Their document IDs follow the ones of the index. The
+     * k-gram and soundex indexes are extended with the new documents.
+     * Changed and removed documents are not detected, they are updated with
+     * updateDocument().
+     */
+    public void addDocuments() {
+        File indexFolder = new File(mFolderPath, "Indexes");
+        List<File> deltaFolders = DiskInvertedIndex.findDeltaFolders(indexFolder);
+        List<String> indexedPaths = readDocumentPaths(indexFolder, deltaFolders);
+        if (indexedPaths == null) {
+            System.out.println("The index does not list its documents, please rebuild the index");
+            return;
+        }
+        Set<String> indexed = new HashSet<String>(indexedPaths);
+        List<File> files = new ArrayList<File>();
+        for (File file : findFiles(Paths.get(mFolderPath))) {
+            if (!indexed.contains(getDocumentPath(file))) {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("No new documents");
+            return;
+        }
+        addSegment(indexFolder, deltaFolders, files, indexedPaths.size());
+    }
+
+    /**
+     * Deletes a document from the index. It is marked in the bitmap of the
+     * live documents, so the queries skip its postings; they are dropped when
+     * the segments are merged.
+     *
+     * @param docID ID of the document
+     */
+    public void deleteDocument(int docID) {
+        File indexFolder = new File(mFolderPath, "Indexes");
+        List<String> indexedPaths = readDocumentPaths(indexFolder, DiskInvertedIndex.findDeltaFolders(indexFolder));
+        if (indexedPaths == null) {
+            System.out.println("The index does not list its documents, please rebuild the index");
+            return;
+        }
+        if (docID < 0 || docID >= indexedPaths.size()) {
+            System.out.println("The index has no document " + docID);
+            return;
+        }
+        LiveDocs liveDocs = LiveDocs.read(indexFolder);
+        if (liveDocs == null) {
+            liveDocs = new LiveDocs();
+        }
+        liveDocs.delete(docID);
+        try {
+            liveDocs.write(indexFolder);
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
+    /**
+     * Updates a document of the directory in the index. The document is
+     * indexed into a new delta segment, then its old version is deleted, so
+     * it costs about as much as indexing one document. A document that was
+     * removed from the directory is only deleted, and a document that was
+     * not indexed yet is added.
+     *
+     * @param documentPath path of the document relative to the directory
+     */
+    public void updateDocument(String documentPath) {
+        File indexFolder = new File(mFolderPath, "Indexes");
+        List<File> deltaFolders = DiskInvertedIndex.findDeltaFolders(indexFolder);
+        List<String> indexedPaths = readDocumentPaths(indexFolder, deltaFolders);
+        if (indexedPaths == null) {
+            System.out.println("The index does not list its documents, please rebuild the index");
+            return;
+        }
+        File file = new File(mFolderPath, documentPath);
+        documentPath = getDocumentPath(file);
+        if (file.isFile() && !addSegment(indexFolder, deltaFolders,
+                Collections.singletonList(file), indexedPaths.size())) {
+            return;
+        }
+
+        LiveDocs liveDocs = LiveDocs.read(indexFolder);
+        if (liveDocs == null) {
+            liveDocs = new LiveDocs();
+        }
+        boolean deleted = false;
+        for (int docID = 0; docID < indexedPaths.size(); docID++) {
+            if (liveDocs.isLive(docID) && indexedPaths.get(docID).equals(documentPath)) {
+                liveDocs.delete(docID);
+                deleted = true;
+            }
+        }
+        if (deleted) {
+            try {
+                liveDocs.write(indexFolder);
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Indexes files into a new delta segment. Only the score bounds of the
+     * new delta are calculated, the bounds of the segments before are scaled
+     * to the new average document length when the index is opened. The
+     * k-gram and soundex files are only written again if the files have new
+     * types or authors.
+     *
+     * @param indexFolder folder of the index files
+     * @param deltaFolders folders of the delta segments of the index
+     * @param files the files to index
+     * @param firstDocID document ID of the first file
+     * @return true if the delta was added
+     */
+    private boolean addSegment(File indexFolder, List<File> deltaFolders, List<File> files, int firstDocID) {
+        int deltaNumber = deltaFolders.isEmpty()
+                ? 1 : DiskInvertedIndex.getDeltaNumber(deltaFolders.get(deltaFolders.size() - 1)) + 1;
+        File deltaFolder = new File(indexFolder, DiskInvertedIndex.DELTA_PREFIX + deltaNumber);
+        // the delta is written to a temporary folder, so an unfinished delta is never opened
+        File tempFolder = new File(indexFolder, deltaFolder.getName() + ".tmp");
+        SortedSet<String> vocabTree = new TreeSet<String>();
+        SoundexIndex sIndex = new SoundexIndex();
+        try {
+            deleteFolder(tempFolder);
+            tempFolder.mkdir();
+            writeSegment(tempFolder.getPath(), files, firstDocID, vocabTree, sIndex);
+            Files.move(tempFolder.toPath(), deltaFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | InterruptedException ex) {
+            System.out.println(ex.toString());
+            deleteFolder(tempFolder);
+            return false;
+        }
+        buildScoreBoundsFiles(deltaFolders.size() + 1);
+        buildBiwordFiles(deltaFolders.size() + 1);
+        updateKgramFile(indexFolder.getPath(), vocabTree);
+        if (sIndex.getDictionary().length > 0) {
+            updateSoundexFile(indexFolder.getPath(), sIndex);
+        }
+        return true;
+    }
+
+    /**
+     * Merges the delta segments of the index with the base segment into one
+     * segment and drops the deleted documents, as a full build of the live
+     * documents would have written it. The live documents get new document
+     * IDs without gaps. The merged files are written to a temporary folder
+     * first, then they replace the files of the base segment and the deltas
+     * are deleted. The postings are streamed from cursors one posting at a
+     * time. The k-gram index keeps the types of deleted documents.
+     */
+    public void mergeSegments() {
+        File indexFolder = new File(mFolderPath, "Indexes");
+        List<File> deltaFolders = DiskInvertedIndex.findDeltaFolders(indexFolder);
+        boolean hasDeletions = LiveDocs.read(indexFolder) != null;
+        if (deltaFolders.isEmpty() && !hasDeletions) {
+            System.out.println("The index has no deltas to merge and no deleted documents");
+            return;
+        }
+        List<String> documentPaths = readDocumentPaths(indexFolder, deltaFolders);
+        File mergeFolder = new File(indexFolder, "merge");
+        // the files are not mapped, a mapped file cannot be replaced on every system
+        DiskInvertedIndex index = new DiskInvertedIndex(mFolderPath, IndexReaderMode.RANDOM_ACCESS_FILE);
+        // every postings list is read once, caching them would only evict each other
+        index.setPostingsCache(new PostingsCache(0));
+        // new IDs of the live documents, -1 for the deleted ones
+        int[] newDocIDs = new int[index.getCorpusSize()];
+        List<String> livePaths = new ArrayList<String>(newDocIDs.length);
+        int liveCount = 0;
+        for (int docID = 0; docID < newDocIDs.length; docID++) {
+            if (index.isDeleted(docID)) {
+                newDocIDs[docID] = -1;
+            } else {
+                newDocIDs[docID] = liveCount++;
+                livePaths.add(documentPaths.get(docID));
+            }
+        }
+        try {
+            deleteFolder(mergeFolder);
+            mergeFolder.mkdir();
+            PostingsWriter writer = new PostingsWriter(mergeFolder.getPath());
+            for (String term : index.getDictionary()) {
+                // the cursors skip the postings of the deleted documents, the
+                // live ones are counted first so the postings can be streamed
+                int documentFrequency = 0;
+                PostingsCursor counter = index.getPostingsCursor(term);
+                while (counter != null && counter.next()) {
+                    documentFrequency++;
+                }
+                if (documentFrequency == 0) {
+                    continue;
+                }
+                writer.startTerm(term, documentFrequency);
+                PostingsCursor cursor = index.getPositionsCursor(term);
+                while (cursor.next()) {
+                    writer.addPosting(newDocIDs[cursor.getDocumentID()], cursor.getTermFrequency(),
+                            cursor.getPositions());
+                }
+                writer.finishTerm();
+            }
+            writer.close();
+            buildWeightFile(mergeFolder.getPath(), index);
+            corpusSize = liveCount;
+            buildCorpusSizeFile(mergeFolder.getPath());
+            buildDocumentsFile(mergeFolder.getPath(), livePaths);
+            if (hasDeletions) {
+                compactSoundexFile(mergeFolder.getPath(), newDocIDs);
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+            index.close();
+            deleteFolder(mergeFolder);
+            return;
+        }
+        index.close();
+
+        try {
+            for (File file : mergeFolder.listFiles()) {
+                Files.move(file.toPath(), new File(indexFolder, file.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+            return;
+        }
+        new File(indexFolder, LiveDocs.FILE).delete();
+        for (File deltaFolder : deltaFolders) {
+            deleteFolder(deltaFolder);
+        }
+        mergeFolder.delete();
+        buildScoreBoundsFiles(0);
+        buildBiwordFiles(0);
+    }
+
+    /**
+     * Indexes the files into a segment in the given folder: the vocabulary,
+     * postings and positions files, the weights of the documents, the corpus
+     * size and the table of the documents.
+     *
+     * @param folder folder of the segment files
+     * @param files the files to index in document ID order
+     * @param firstDocID document ID of the first file
+     * @param vocabTree the processed tokens of the files are added to it
+     * @param sIndex the authors of the files are added to it
+     */
+    private void writeSegment(String folder, List<File> files, int firstDocID,
+            SortedSet<String> vocabTree, SoundexIndex sIndex) throws IOException, InterruptedException {
+        File runFolder = new File(folder, "runs");
+        corpusSize = 0;
+        IndexingWorker[] workers = indexFiles(files, firstDocID, runFolder);
+
+        // merge stage
+        List<File> runs = new ArrayList<File>();
+        for (IndexingWorker worker : workers) {
+            runs.addAll(worker.getRuns());
+            vocabTree.addAll(worker.getVocabTree());
+            sIndex.addAll(worker.getSoundex());
+        }
+        buildWeightFile(folder, workers);
+        if (runs.isEmpty()) {
+            // everything fit into memory, write the index directly
+            buildIndexForDirectory(workers[0].getIndex(), folder);
+        } else {
+            mergeRuns(folder, runs);
+        }
+        for (IndexingWorker worker : workers) {
+            worker.getWeightsFile().delete();
+        }
+        runFolder.delete();
+        buildCorpusSizeFile(folder);
+        List<String> documentPaths = new ArrayList<String>(files.size());
+        for (File file : files) {
+            documentPaths.add(getDocumentPath(file));
+        }
+        buildDocumentsFile(folder, documentPaths);
+    }
+
+    /**
+     * Get the path of a document relative to the directory, separated by '/'
+     * on every system.
+     *
+     * @param file the document
+     * @return path of the document
+     */
+    private String getDocumentPath(File file) {
+        return Paths.get(mFolderPath).relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Read the paths of the documents of the base segment and the delta
+     * segments of the index.
+     *
+     * @param indexFolder folder of the index files
+     * @param deltaFolders folders of the delta segments
+     * @return paths of the documents in document ID order, null if the index
+     * does not list its documents
+     */
+    private static List<String> readDocumentPaths(File indexFolder, List<File> deltaFolders) {
+        List<File> segmentFolders = new ArrayList<File>();
+        segmentFolders.add(indexFolder);
+        segmentFolders.addAll(deltaFolders);
+        DocumentTable table = DocumentTable.open(segmentFolders, IndexReaderMode.RANDOM_ACCESS_FILE);
+        if (table == null) {
+            return null;
+        }
+        List<String> documentPaths = new ArrayList<String>(table.size());
+        try {
+            for (int docID = 0; docID < table.size(); docID++) {
+                documentPaths.add(table.getPath(docID));
+            }
+        } finally {
+            try {
+                table.close();
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
+            }
+        }
+        return documentPaths;
+    }
+
+    /**
+     * Delete a folder and everything in it.
+     */
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteFolder(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        folder.delete();
+    }
+
+    /**
+     * Walk through all .json or .txt files in a directory and subdirectory and
+     * collect them in the order of the walk.
      *
      * @param path path of the directory
-     * @param index the positional inverted index
+     * @return the files to index
      */
-    private void indexFile(Path path, PositionalInvertedIndex index, SortedSet vocabTree, SoundexIndex sIndex) {
+    private static List<File> findFiles(Path path) {
+        List<File> files = new ArrayList<File>();
         try {
             Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                int mDocumentID = 0;
 
                 @Override
                 public FileVisitResult preVisitDirectory(Path dir,
@@ -94,23 +488,9 @@ public class IndexWriter {
                 @Override
                 public FileVisitResult visitFile(Path file,
                         BasicFileAttributes attrs) throws IOException {
-                    // only process .json files
-                    if (file.toString().endsWith(".json")) {
-                        // get the number of bytes in the file and add to list
-                        double size = file.toFile().length();
-                        docByteSize.add(size);
-                        // do the indexing
-                        indexJFile(file.toFile(), index, vocabTree, mDocumentID, sIndex);
-                        mDocumentID++;
-                    }
-                    
-                    if (file.toString().endsWith(".txt")){
-                        // get the number of bytes in the file and add to list
-                        double size = file.toFile().length();
-                        docByteSize.add(size);
-                        // do the indexing
-                        indexTFile(file.toFile(), index, vocabTree, mDocumentID);
-                        mDocumentID++;
+                    // only process .json and .txt files
+                    if (file.toString().endsWith(".json") || file.toString().endsWith(".txt")) {
+                        files.add(file.toFile());
                     }
                     return FileVisitResult.CONTINUE;
                 }
@@ -126,116 +506,125 @@ public class IndexWriter {
         } catch (IOException ex) {
             System.out.println(ex.toString());
         }
+        return files;
     }
 
-    private int indexTFile(File file, PositionalInvertedIndex index, SortedSet vocabTree, int docID) throws
-            FileNotFoundException {
-                
-        // add the document to the list for tracking terms
-            docTermFrequency.add(new HashMap<String, Integer>());
-
-            // process the body field of the document
-            SimpleTokenStream s = new SimpleTokenStream(file);
-            int positionNumber = 0;
-            while (s.hasNextToken()) {
-                TokenProcessorStream t = new TokenProcessorStream(s.nextToken());
-                while (t.hasNextToken()) {
-                    String proToken = t.nextToken(); // the processed token
-                    if (proToken != null) {
-                        String term = PorterStemmer.getStem(proToken);
-                        // add the term to the inverted index
-                        index.addTerm(term, docID, positionNumber);
-                        // add the processed token to the vocab tree
-                        vocabTree.add(proToken);
-                        // get the frequency of the term and increment it
-                        int termFrequency = docTermFrequency.get(docID).containsKey(term)
-                                ? docTermFrequency.get(docID).get(term) : 0;
-                        docTermFrequency.get(docID).put(term, termFrequency + 1);
+    /**
+     * Splits the files into contiguous document ID ranges and indexes each
+     * range with its own worker thread. The calling thread is the reader
+     * stage: it reads the files and hands them over to the workers, taking one
+     * document of each range in turn so that all workers are kept busy.
+     *
+     * @param files the files to index in document ID order
+     * @param firstDocID document ID of the first file
+     * @param runFolder folder for the runs and weights files of the workers
+     * @return the finished workers in document ID order
+     */
+    private IndexingWorker[] indexFiles(List<File> files, int firstDocID, File runFolder)
+            throws IOException, InterruptedException {
+        int workerCount = Math.max(1, Math.min(mThreadCount, files.size()));
+        IndexingWorker[] workers = new IndexingWorker[workerCount];
+        Thread[] threads = new Thread[workerCount];
+        int[] firstDocIDs = new int[workerCount + 1];
+        for (int w = 0; w <= workerCount; w++) {
+            firstDocIDs[w] = (int) ((long) files.size() * w / workerCount);
+        }
+        for (int w = 0; w < workerCount; w++) {
+            // a single worker keeps its index in memory if it never got too big
+            workers[w] = new IndexingWorker(w, firstDocID + firstDocIDs[w], firstDocIDs[w + 1] - firstDocIDs[w],
+                    mMemoryBudget / workerCount, runFolder, workerCount > 1);
+            threads[w] = new Thread(workers[w], "indexing-worker-" + w);
+            threads[w].start();
+        }
 
+        // reader stage, the ranges differ by one document at most
+        int longestRange = 0;
+        for (int w = 0; w < workerCount; w++) {
+            longestRange = Math.max(longestRange, firstDocIDs[w + 1] - firstDocIDs[w]);
+        }
+        for (int i = 0; i < longestRange; i++) {
+            for (int w = 0; w < workerCount; w++) {
+                int docID = firstDocIDs[w] + i;
+                if (docID < firstDocIDs[w + 1]) {
+                    File file = files.get(docID);
+                    byte[] content;
+                    try {
+                        content = Files.readAllBytes(file.toPath());
+                    } catch (IOException ex) {
+                        content = null;
                     }
+                    workers[w].put(new IndexingWorker.Document(file, content));
                 }
-                positionNumber++;
             }
-            
-            // increment the corpus size
-            corpusSize++;
-
-            // add the number of tokens in the document to list
-            docLength.add(positionNumber);
+        }
 
-        return corpusSize;
+        for (int w = 0; w < workerCount; w++) {
+            threads[w].join();
+            if (workers[w].getError() != null) {
+                throw new IOException("Indexing failed: " + workers[w].getError().toString());
+            }
+            corpusSize += workers[w].getDocumentCount();
+        }
+        return workers;
     }
-    
-    
+
     /**
-     * Index a file by reading a series of tokens from the body of the file.
+     * Merges all sorted runs into the final vocabulary, vocabulary table and
+     * postings files. The runs hold increasing document ID ranges, so the
+     * postings of a term are concatenated in run order. The run files are
+     * deleted afterwards.
      *
-     * @param file the file to be indexed
-     * @param index the positional inverted index
-     * @param docID document ID
+     * @param folder folder of the index files
+     * @param runs the sorted runs in document ID order
      */
-    private int indexJFile(File file, PositionalInvertedIndex index, SortedSet vocabTree, int docID, SoundexIndex sIndex) {
-        try {
-
-            // Gson object to read json file
-            Gson gson = new Gson();
-            JsonDocument doc;
-            String docBody, docAuthor;
-
-            // reader to parse the relevent parts of the document
-            JsonReader reader = new JsonReader(new FileReader(file));
-            doc = gson.fromJson(reader, JsonDocument.class);
-            docBody = doc.getBody();
-            docAuthor = doc.getAuthor();
-
-            // add the document to the list for tracking terms
-            docTermFrequency.add(new HashMap<String, Integer>());
-
-            // process the body field of the document
-            SimpleTokenStream s = new SimpleTokenStream(docBody);
-            int positionNumber = 0;
-            while (s.hasNextToken()) {
-                TokenProcessorStream t = new TokenProcessorStream(s.nextToken());
-                while (t.hasNextToken()) {
-                    String proToken = t.nextToken(); // the processed token
-                    if (proToken != null) {
-                        String term = PorterStemmer.getStem(proToken);
-                        // add the term to the inverted index
-                        index.addTerm(term, docID, positionNumber);
-                        // add the processed token to the vocab tree
-                        vocabTree.add(proToken);
-                        // get the frequency of the term and increment it
-                        int termFrequency = docTermFrequency.get(docID).containsKey(term)
-                                ? docTermFrequency.get(docID).get(term) : 0;
-                        docTermFrequency.get(docID).put(term, termFrequency + 1);
+    static void mergeRuns(String folder, List<File> runs) throws IOException {
+        // the run with the smallest term comes first, ties in document ID order
+        PriorityQueue<PostingsRun> queue = new PriorityQueue<PostingsRun>(runs.size(),
+                new Comparator<PostingsRun>() {
+            @Override
+            public int compare(PostingsRun r1, PostingsRun r2) {
+                int compareValue = r1.getTerm().compareTo(r2.getTerm());
+                return compareValue != 0 ? compareValue : r1.getOrder() - r2.getOrder();
+            }
+        });
+        for (int i = 0; i < runs.size(); i++) {
+            PostingsRun run = new PostingsRun(runs.get(i), i);
+            if (run.nextTerm()) {
+                queue.add(run);
+            } else {
+                run.close();
+            }
+        }
 
-                    }
-                }
-                positionNumber++;
+        PostingsWriter writer = new PostingsWriter(folder);
+        List<PostingsRun> termRuns = new ArrayList<PostingsRun>();
+        while (!queue.isEmpty()) {
+            String term = queue.peek().getTerm();
+            // the runs that contain the term, in document ID order
+            int documentFrequency = 0;
+            while (!queue.isEmpty() && queue.peek().getTerm().equals(term)) {
+                PostingsRun run = queue.poll();
+                documentFrequency += run.getDocumentFrequency();
+                termRuns.add(run);
             }
-            // process the author field of the document and add to soundex
-            if (docAuthor != null) {
-                s = new SimpleTokenStream(docAuthor);
-                while (s.hasNextToken()) {
-                    TokenProcessorStream t = new TokenProcessorStream(s.nextToken());
-                    while (t.hasNextToken()) { // process the author's name
-                        String name = t.nextToken();
-                        if (name != null) {
-                            sIndex.addToSoundex(name, docID);
-                        }
-                    }
+            // the postings are streamed from the runs, a term is never held in memory
+            writer.startTerm(term, documentFrequency);
+            for (PostingsRun run : termRuns) {
+                run.copyPostings(writer);
+                if (run.nextTerm()) {
+                    queue.add(run);
+                } else {
+                    run.close();
                 }
             }
-            // increment the corpus size
-            corpusSize++;
-
-            // add the number of tokens in the document to list
-            docLength.add(positionNumber);
+            writer.finishTerm();
+            termRuns.clear();
+        }
+        writer.close();
 
-        } catch (FileNotFoundException ex) {
-            System.out.println(ex.toString());
+        for (File run : runs) {
+            run.delete();
         }
-        return corpusSize;
     }
 
     /**
@@ -244,91 +633,13 @@ public class IndexWriter {
      * disk, building three files: the postings index, the vocabulary list, and
      * the vocabulary table.
      */
-    private static void buildIndexForDirectory(PositionalInvertedIndex index, String folder) {
-        // the array of terms
-        String[] dictionary = index.getDictionary();
-        // an array of positions in the vocabulary file
-        long[] vocabPositions = new long[dictionary.length];
-
-        buildVocabFile(folder, dictionary, vocabPositions, "vocab.bin");
-        buildPostingsFile(folder, index, dictionary, vocabPositions);
-    }
-
-    /**
-     * Builds the postings.bin file for the indexed directory, using the given
-     * PositionalInvertedIndex of that directory.
-     */
-    private static void buildPostingsFile(String folder, PositionalInvertedIndex index,
-            String[] dictionary, long[] vocabPositions) {
-        
-        FileOutputStream postingsFile = null;
-        try {
-
-            postingsFile = new FileOutputStream(new File(folder, "postings.bin"));
-
-            // simultaneously build the vocabulary table on disk, mapping a term index to a
-            // file location in the postings file.
-            FileOutputStream vocabTable = new FileOutputStream(new File(folder, "vocabTable.bin"));
-
-            // the first thing we must write to the vocabTable file is the number of vocab terms.
-            byte[] tSize = ByteBuffer.allocate(4).putInt(dictionary.length).array();
-            vocabTable.write(tSize, 0, tSize.length);
-
-            int vocabI = 0;
-            for (String s : dictionary) {
-                // for each String in dictionary, retrieve its postings.
-                List<PositionalPosting> postings = index.getPostingsList(s);
-               
-                // write the vocab table entry for this term: the byte location of the term in the vocab list file,
-                // and the byte location of the postings for the term in the postings file.
-                byte[] vPositionBytes = ByteBuffer.allocate(8).putLong(vocabPositions[vocabI]).array();
-                vocabTable.write(vPositionBytes, 0, vPositionBytes.length);
-
-                byte[] pPositionBytes = ByteBuffer.allocate(8).putLong(postingsFile.getChannel().position()).array();
-                vocabTable.write(pPositionBytes, 0, pPositionBytes.length);
-
-                // write the postings file for this term:
-                // 1. document frequency for the term, df_t
-                // 2. document id, encoded as gaps, id
-                // 3. term frequency, tf_t,d
-                // 4. positions, encoded as gaps, p
-                byte[] docFreqBytes = ByteBuffer.allocate(4).putInt(postings.size()).array();
-                postingsFile.write(docFreqBytes, 0, docFreqBytes.length);
-
-                int lastDocId = 0;
-                for (PositionalPosting p : postings) {
-                    
-                    // write the document ID (encode a gap, not a doc ID)
-                    byte[] docIdBytes = ByteBuffer.allocate(4).putInt(p.getDocumentID() - lastDocId).array();
-                    postingsFile.write(docIdBytes, 0, docIdBytes.length);
-                    lastDocId = p.getDocumentID();
-
-                    // write the term frequency
-                    int termFrequency = p.getTermPositions().size();
-                    byte[] termFreqBytes = ByteBuffer.allocate(4).putInt(termFrequency).array();
-                    postingsFile.write(termFreqBytes, 0, termFreqBytes.length);
-
-                    // write the positions (encode a gap, not a position)
-                    int lastPos = 0;
-                    for (Integer position : p.getTermPositions()) {
-                        byte[] positionBytes = ByteBuffer.allocate(4).putInt(position - lastPos).array();
-                        postingsFile.write(positionBytes, 0, positionBytes.length);
-                        lastPos = position;
-                    }
-
-                }
-                vocabI++;
-            }
-            vocabTable.close();
-            postingsFile.close();
-        } catch (FileNotFoundException ex) {
-        } catch (IOException ex) {
-        } finally {
-            try {
-                postingsFile.close();
-            } catch (IOException ex) {
-            }
+    private static void buildIndexForDirectory(PositionalInvertedIndex index, String folder)
+            throws IOException {
+        PostingsWriter writer = new PostingsWriter(folder);
+        for (String term : index.getDictionary()) {
+            writer.addTerm(term, index.getPostingsList(term));
         }
+        writer.close();
     }
 
     /**
@@ -368,69 +679,57 @@ public class IndexWriter {
     }
 
     /**
-     * Builds the file for the weights in the given folder. It includes the
-     * weight, lenght, size and average term frequency of each document. At the
-     * end it saves the average doc length.
+     * Builds the file for the weights in the given folder by concatenating the
+     * weights files of the workers. It includes the weight, lenght, size and
+     * average term frequency of each document. At the end it saves the average
+     * doc length.
      */
-    private void buildWeightFile(String folder) {
-        FileOutputStream weightsFile = null;
-        try {
-
-            weightsFile = new FileOutputStream(new File(folder, "docWeights.bin"));
-            for (int docId = 0; docId < docTermFrequency.size(); docId++) {
-
-                double docWeight = 0; // L_d
-                double avgTermFrequency = 0; // the average tf for the doc
-
-                for (Integer termFrequency : docTermFrequency.get(docId).values()) {
-                    double termWeight = 1 + (Math.log(termFrequency)); // w_d,t
-                    docWeight += Math.pow(termWeight, 2); // increment by the term weight squared
-                    avgTermFrequency += termFrequency;
-                }
-
-                // write the doc weight to file
-                docWeight = Math.sqrt(docWeight);
-                byte[] docWeightByte = ByteBuffer.allocate(8).putDouble(docWeight).array();
-                weightsFile.write(docWeightByte, 0, docWeightByte.length);
-
-                // write the doc length to file
-                double length = docLength.get(docId); // number of tokens in the doc
-                byte[] docLengthByte = ByteBuffer.allocate(8).putDouble(length).array();
-                weightsFile.write(docLengthByte, 0, docLengthByte.length);
-
-                // write the doc size to file
-                double byteSize = docByteSize.get(docId); // number of bytes in the doc
-                byte[] docSizeByte = ByteBuffer.allocate(8).putDouble(byteSize).array();
-                weightsFile.write(docSizeByte, 0, docSizeByte.length);
-
-                // write the average tf count to file
-                avgTermFrequency /= docTermFrequency.get(docId).keySet().size(); // the average tf for the doc
-                byte[] aveTfByte = ByteBuffer.allocate(8).putDouble(avgTermFrequency).array();
-                weightsFile.write(aveTfByte, 0, aveTfByte.length);
-
+    private void buildWeightFile(String folder, IndexingWorker[] workers) throws IOException {
+        long totalDocLength = 0;
+        try (FileOutputStream weightsFile = new FileOutputStream(new File(folder, "docWeights.bin"))) {
+            for (IndexingWorker worker : workers) {
+                Files.copy(worker.getWeightsFile().toPath(), weightsFile);
+                totalDocLength += worker.getTotalDocLength();
             }
 
             // write the avg doc length for the corpus at the end of the file
-            double avgDocLength = 0;
-            for (int dLength : docLength) {
-                avgDocLength += dLength;
-            }
-            avgDocLength /= corpusSize;
+            double avgDocLength = (double) totalDocLength / corpusSize;
             byte[] aveDocLengthByte = ByteBuffer.allocate(8).putDouble(avgDocLength).array();
             weightsFile.write(aveDocLengthByte, 0, aveDocLengthByte.length);
+        }
+    }
 
-            weightsFile.close();
-        } catch (FileNotFoundException ex) {
-        } catch (UnsupportedEncodingException ex) {
-            System.out.println(ex.toString());
-        } catch (IOException ex) {
-        } finally {
-            try {
-                weightsFile.close();
-            } catch (IOException ex) {
+    /**
+     * Builds the file for the weights in the given folder from the weights
+     * of the live documents of an index. The average doc length is the one
+     * of the live documents.
+     */
+    private static void buildWeightFile(String folder, DiskInvertedIndex index) throws IOException {
+        try (DataOutputStream weightsFile = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(folder, "docWeights.bin"))))) {
+            long totalDocLength = 0;
+            int liveCount = 0;
+            for (int docID = 0; docID < index.getCorpusSize(); docID++) {
+                if (index.isDeleted(docID)) {
+                    continue;
+                }
+                weightsFile.writeDouble(index.getDocWeight(docID));
+                weightsFile.writeDouble(index.getDocLength(docID));
+                weightsFile.writeDouble(index.getDocSize(docID));
+                weightsFile.writeDouble(index.getAvgTermFrequency(docID));
+                totalDocLength += (long) index.getDocLength(docID);
+                liveCount++;
             }
+            weightsFile.writeDouble((double) totalDocLength / liveCount);
         }
+    }
 
+    /**
+     * Builds the document table of the paths of the documents in the given
+     * folder, in document ID order.
+     */
+    private static void buildDocumentsFile(String folder, List<String> documentPaths) throws IOException {
+        DocumentTable.write(new File(folder), documentPaths);
     }
 
     /**
@@ -452,13 +751,128 @@ public class IndexWriter {
     }
 
     /**
-     * Builds the k-gram and serialize to file
+     * Builds the files of the score bounds of every term for every formula,
+     * one for every segment of the index from the given one on. The bound of
+     * a term is its highest weight in a document divided by the length of
+     * the document, calculated on the written index with the statistics of
+     * all segments.
+     *
+     * @param firstSegment number of the first segment, 0 for the base segment
+     */
+    private void buildScoreBoundsFiles(int firstSegment) {
+        // the old bounds do not match the index any more
+        File indexFolder = new File(mFolderPath, "Indexes");
+        if (firstSegment == 0) {
+            new File(indexFolder, DiskInvertedIndex.SCORE_BOUNDS_FILE).delete();
+        }
+        List<File> deltaFolders = DiskInvertedIndex.findDeltaFolders(indexFolder);
+        for (int segment = Math.max(firstSegment, 1); segment <= deltaFolders.size(); segment++) {
+            new File(deltaFolders.get(segment - 1), DiskInvertedIndex.SCORE_BOUNDS_FILE).delete();
+        }
+        DiskInvertedIndex index = new DiskInvertedIndex(mFolderPath, IndexReaderMode.RANDOM_ACCESS_FILE);
+        FormEnum[] forms = FormEnum.values();
+        Formula[] formulas = new Formula[forms.length];
+        for (FormEnum form : forms) {
+            formulas[form.ordinal()] = form.createFormula(index);
+        }
+        try {
+            List<DiskInvertedIndex> segments = index.getSegments();
+            for (int segment = firstSegment; segment < segments.size(); segment++) {
+                buildScoreBoundsFile(segments.get(segment), formulas, index.getAvgDocLength());
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Builds the biword indexes of the segments of the index from the given
+     * one on, the adjacent pairs of the frequent terms that phrase queries
+     * read instead of their positional postings. The base segment indexes
+     * the pairs of the terms with the highest document frequencies, as many
+     * as the system property index.biwords sets; without the property it
+     * keeps the number of terms of its biword index before, 0 for none. A
+     * delta indexes the pairs of the terms of the base segment, so a pair is
+     * found in all segments or in none.
+     *
+     * @param firstSegment number of the first segment, 0 for the base segment
+     */
+    private void buildBiwordFiles(int firstSegment) {
+        File indexFolder = new File(mFolderPath, "Indexes");
+        int termCount = 0;
+        if (firstSegment == 0) {
+            termCount = Integer.getInteger(BiwordIndex.PROPERTY, BiwordIndex.readTermCount(indexFolder));
+            BiwordIndex.delete(indexFolder);
+            if (termCount <= 0) {
+                return;
+            }
+        }
+        DiskInvertedIndex index = new DiskInvertedIndex(mFolderPath, IndexReaderMode.RANDOM_ACCESS_FILE);
+        index.setPostingsCache(new PostingsCache(0));
+        try {
+            String[] terms = firstSegment == 0
+                    ? BiwordIndex.selectTerms(index, termCount) : index.getBiwordTerms();
+            if (terms == null) {
+                return; // the base segment has no biword index
+            }
+            List<DiskInvertedIndex> segments = index.getSegments();
+            for (int segment = firstSegment; segment < segments.size(); segment++) {
+                BiwordIndex.delete(segments.get(segment).getFolder());
+                BiwordIndex.write(segments.get(segment), terms, mMemoryBudget);
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Builds the file of the score bounds of the terms of one segment.
+     *
+     * @param segment segment of the index
+     * @param formulas the formulas of every form on the whole index
+     * @param avgDocLength average document length of the whole index
+     */
+    private static void buildScoreBoundsFile(DiskInvertedIndex segment, Formula[] formulas, double avgDocLength) {
+        try (DataOutputStream boundsFile = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(segment.getFolder(), DiskInvertedIndex.SCORE_BOUNDS_FILE))))) {
+            String[] dictionary = segment.getSegmentDictionary();
+            boundsFile.writeInt(dictionary.length);
+            boundsFile.writeInt(formulas.length);
+            boundsFile.writeDouble(avgDocLength);
+
+            DiskPosting posting = new DiskPosting(0, 0);
+            double[] bounds = new double[formulas.length];
+            for (String term : dictionary) {
+                Arrays.fill(bounds, 0);
+                PostingsCursor cursor = segment.getSegmentPostingsCursor(term);
+                while (cursor.next()) {
+                    posting.setDocumentID(cursor.getDocumentID());
+                    posting.setTermFrequency(cursor.getTermFrequency());
+                    for (int f = 0; f < formulas.length; f++) {
+                        bounds[f] = Math.max(bounds[f], formulas[f].calcNormalizedWDT(posting));
+                    }
+                }
+                for (double bound : bounds) {
+                    // round up, the bound must not get lower as a float
+                    float floatBound = (float) bound;
+                    boundsFile.writeFloat(floatBound < bound ? Math.nextUp(floatBound) : floatBound);
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+    }
+
+    /**
+     * Builds the k-gram index and writes it to file
      *
      * @param folder string path to where to store the k-gram file
      * @param vocabTree tree of the vocabulary types
      * @param kIndex in-memory k-gram index
      */
-    private static void buildKgramFile(String folder, SortedSet vocabTree, KGramIndex kIndex) {
+    private static void buildKgramFile(String folder, SortedSet<String> vocabTree, KGramIndex kIndex) {
 
         // Build the KGramIndex using the types from vocabTree
         Iterator<String> iter = vocabTree.iterator();
@@ -466,17 +880,92 @@ public class IndexWriter {
             kIndex.addType(iter.next());
         }
 
-        // Write the k-gram index to file
+        // Write the k-gram index to file with the types numbered in their order
+        try (OutputStream kgramFile = new BufferedOutputStream(
+                new FileOutputStream(new File(folder, DiskKGramIndex.FILE)))) {
+            DiskKGramIndex.write(kgramFile, vocabTree.toArray(new String[0]), kIndex);
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        new File(folder, DiskKGramIndex.LEGACY_FILE).delete();
+    }
+
+    /**
+     * Adds the types of new documents to the k-gram index file. The k-gram
+     * index is built again from all types, so the type IDs stay in the order
+     * of the types. Nothing is written if there is no new type.
+     *
+     * @param folder string path to where the k-gram file is stored
+     * @param vocabTree tree of the vocabulary types of the new documents
+     */
+    private static void updateKgramFile(String folder, SortedSet<String> vocabTree) {
+        SortedSet<String> types = new TreeSet<String>();
+        DiskKGramIndex kIndex = new DiskKGramIndex(new File(folder), IndexReaderMode.RANDOM_ACCESS_FILE);
         try {
-            FileOutputStream fileOut = new FileOutputStream(new File(folder, "kGramIndex.bin"));
-            ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-            objectOut.writeObject(kIndex);
-            objectOut.close();
-            fileOut.close();
+            types.addAll(Arrays.asList(kIndex.getTypes()));
         } catch (IOException ex) {
             System.out.println(ex.toString());
+            return;
+        } finally {
+            kIndex.close();
+        }
+        if (!types.addAll(vocabTree)) {
+            return; // no new type
         }
+        buildKgramFile(folder, types, new KGramIndex());
+    }
 
+    /**
+     * Adds the authors of new documents to the soundex file.
+     *
+     * @param folder string path to where the soundex files are stored
+     * @param newIndex soundex index of the new documents
+     */
+    private void updateSoundexFile(String folder, SoundexIndex newIndex) {
+        SoundexIndex sIndex = new SoundexIndex();
+        DiskSoundexIndex diskIndex = new DiskSoundexIndex(mFolderPath, IndexReaderMode.RANDOM_ACCESS_FILE);
+        try {
+            for (String soundexCode : diskIndex.getDictionary()) {
+                List<Integer> postings = diskIndex.getCodePostings(soundexCode);
+                if (postings != null) {
+                    sIndex.addCodePosts(soundexCode, postings);
+                }
+            }
+        } finally {
+            diskIndex.close();
+        }
+        sIndex.addAll(newIndex);
+        buildSoundexFile(folder, sIndex);
+    }
+
+    /**
+     * Writes the soundex files of the live documents of the index with their
+     * new document IDs.
+     *
+     * @param folder string path to where to write the soundex files
+     * @param newDocIDs new ID of every document, -1 for deleted documents
+     */
+    private void compactSoundexFile(String folder, int[] newDocIDs) {
+        SoundexIndex sIndex = new SoundexIndex();
+        DiskSoundexIndex diskIndex = new DiskSoundexIndex(mFolderPath, IndexReaderMode.RANDOM_ACCESS_FILE);
+        try {
+            List<Integer> newPostings = new ArrayList<Integer>();
+            for (String soundexCode : diskIndex.getDictionary()) {
+                // the deleted documents are skipped already
+                List<Integer> postings = diskIndex.getCodePostings(soundexCode);
+                if (postings == null || postings.isEmpty()) {
+                    continue;
+                }
+                for (int docID : postings) {
+                    newPostings.add(newDocIDs[docID]);
+                }
+                sIndex.addCodePosts(soundexCode, newPostings);
+                newPostings.clear();
+            }
+        } finally {
+            diskIndex.close();
+        }
+        buildSoundexFile(folder, sIndex);
     }
 
     /**
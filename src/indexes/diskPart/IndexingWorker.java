@@ -0,0 +1,294 @@
+package indexes.diskPart;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import helper.JsonDocument;
+import helper.PorterStemmer;
+import indexes.PositionalInvertedIndex;
+import indexes.SoundexIndex;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import token.DocumentTokenStream;
+
+/**
+ * Tokenizes, stems and indexes a contiguous range of document IDs into a
+ * private partial index. The documents are handed over by the reader stage of
+ * the IndexWriter in document ID order. Whenever the partial index uses up the
+ * memory budget of the worker, it is flushed to disk as a sorted run. The
+ * weights of the documents are written to a weights file of the worker.
+ */
+class IndexingWorker implements Runnable {
+
+    // estimated heap bytes used by a term, a posting and a position in the
+    // in-memory index (object headers, references and the growable int
+    // arrays of the positions)
+    private static final long TERM_BYTES = 160;
+    private static final long POSTING_BYTES = 48;
+    private static final long POSITION_BYTES = 6;
+
+    private static final int QUEUE_CAPACITY = 64; // documents read ahead for the worker
+
+    private final int mWorkerID;
+    private final int mFirstDocID; // first document ID of the range
+    private final int mDocumentCount; // number of documents in the range
+    private final long mMemoryBudget; // heap bytes the partial index may use before it is flushed
+    private final File mRunFolder;
+    private final boolean mFlushAtEnd; // flush the partial index when the range is done
+    private final BlockingQueue<Document> mQueue;
+
+    private final PositionalInvertedIndex mIndex;
+    private final SortedSet<String> mVocabTree; // the processed tokens of the range
+    private final SoundexIndex mSoundex;
+    private Map<String, Integer> mDocTermFrequency; // term frequencies for the current document
+    private final DocumentTokenStream mTokenStream = new DocumentTokenStream(""); // reused for every document
+    private final List<File> mRuns; // sorted runs flushed to disk
+    private DataOutputStream mWeightsFile;
+    private long mTotalDocLength; // the number of tokens in the range
+    private Exception mError;
+
+    /**
+     * A document of the corpus as read by the reader stage.
+     */
+    static class Document {
+
+        private final File file;
+        private final byte[] content; // null if the file could not be read
+
+        Document(File file, byte[] content) {
+            this.file = file;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Creates a worker for the given document ID range.
+     *
+     * @param workerID position of the worker in document ID order
+     * @param firstDocID first document ID of the range
+     * @param documentCount number of documents in the range
+     * @param memoryBudget heap bytes the partial index may use
+     * @param runFolder folder for the runs and the weights file
+     * @param flushAtEnd true to flush the partial index to a run at the end,
+     * false to keep it in memory if no run was flushed before
+     */
+    IndexingWorker(int workerID, int firstDocID, int documentCount, long memoryBudget,
+            File runFolder, boolean flushAtEnd) {
+        mWorkerID = workerID;
+        mFirstDocID = firstDocID;
+        mDocumentCount = documentCount;
+        mMemoryBudget = memoryBudget;
+        mRunFolder = runFolder;
+        mFlushAtEnd = flushAtEnd;
+        mQueue = new ArrayBlockingQueue<Document>(QUEUE_CAPACITY);
+        mIndex = new PositionalInvertedIndex();
+        mVocabTree = new TreeSet<String>();
+        mSoundex = new SoundexIndex();
+        mDocTermFrequency = new HashMap<String, Integer>();
+        mRuns = new ArrayList<File>();
+    }
+
+    /**
+     * Hand the next document of the range over to the worker. Blocks while the
+     * worker is too far behind.
+     *
+     * @param document the next document in document ID order
+     */
+    void put(Document document) throws InterruptedException {
+        mQueue.put(document);
+    }
+
+    @Override
+    public void run() {
+        try {
+            mRunFolder.mkdir();
+            mWeightsFile = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(getWeightsFile())));
+        } catch (IOException ex) {
+            mError = ex;
+        }
+        try {
+            for (int i = 0; i < mDocumentCount; i++) {
+                // keep taking the documents after an error so that the reader stage does not block
+                Document document = mQueue.take();
+                if (mError == null) {
+                    try {
+                        indexDocument(document, mFirstDocID + i);
+                    } catch (IOException | RuntimeException ex) {
+                        mError = ex;
+                    }
+                }
+            }
+            if (mError == null) {
+                mWeightsFile.close();
+                if (mFlushAtEnd || !mRuns.isEmpty()) {
+                    flushRun();
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            mError = ex;
+        }
+    }
+
+    /**
+     * Index the body of a .json or .txt document and the author of a .json
+     * document.
+     *
+     * @param document the document
+     * @param docID document ID
+     */
+    private void indexDocument(Document document, int docID) throws IOException {
+        String docBody = null, docAuthor = null;
+        if (document.content == null) {
+            System.out.println("Could not read " + document.file);
+        } else if (document.file.getName().endsWith(".json")) {
+            try {
+                // Gson object to read json file
+                JsonDocument doc = new Gson().fromJson(new String(document.content), JsonDocument.class);
+                if (doc != null) {
+                    docBody = doc.getBody();
+                    docAuthor = doc.getAuthor();
+                }
+            } catch (JsonParseException ex) {
+                System.out.println(document.file + ": " + ex.toString());
+            }
+        } else {
+            docBody = new String(document.content);
+        }
+
+        // process the body field of the document
+        int positionNumber = 0;
+        if (docBody != null) {
+            mTokenStream.reset(docBody);
+            while (mTokenStream.hasNextToken()) {
+                String proToken = mTokenStream.nextToken(); // the processed token
+                String term = PorterStemmer.getStem(proToken);
+                // add the term to the inverted index
+                mIndex.addTerm(term, docID, mTokenStream.getPosition());
+                // add the processed token to the vocab tree
+                mVocabTree.add(proToken);
+                // get the frequency of the term and increment it
+                int termFrequency = mDocTermFrequency.containsKey(term)
+                        ? mDocTermFrequency.get(term) : 0;
+                mDocTermFrequency.put(term, termFrequency + 1);
+            }
+            positionNumber = mTokenStream.getWordCount();
+        }
+
+        // process the author field of the document and add to soundex
+        if (docAuthor != null) {
+            mTokenStream.reset(docAuthor);
+            while (mTokenStream.hasNextToken()) { // process the author's name
+                mSoundex.addToSoundex(mTokenStream.nextToken(), docID);
+            }
+        }
+
+        // write the weights of the document, flush the index if it got too big
+        writeDocumentWeights(positionNumber, document.content == null ? 0 : document.content.length);
+        mDocTermFrequency = new HashMap<String, Integer>();
+        mTotalDocLength += positionNumber;
+
+        long estimatedBytes = mIndex.getTermCount() * TERM_BYTES
+                + mIndex.getPostingCount() * POSTING_BYTES
+                + mIndex.getPositionCount() * POSITION_BYTES;
+        if (estimatedBytes > mMemoryBudget) {
+            flushRun();
+        }
+    }
+
+    /**
+     * Writes the weight, lenght, size and average term frequency of the
+     * current document to the weights file.
+     *
+     * @param docLength the number of tokens in the document
+     * @param byteSize the number of bytes in the document
+     */
+    private void writeDocumentWeights(int docLength, double byteSize) throws IOException {
+        double docWeight = 0; // L_d
+        double avgTermFrequency = 0; // the average tf for the doc
+
+        for (Integer termFrequency : mDocTermFrequency.values()) {
+            double termWeight = 1 + (Math.log(termFrequency)); // w_d,t
+            docWeight += Math.pow(termWeight, 2); // increment by the term weight squared
+            avgTermFrequency += termFrequency;
+        }
+
+        // write the doc weight to file
+        docWeight = Math.sqrt(docWeight);
+        mWeightsFile.writeDouble(docWeight);
+
+        // write the doc length to file
+        mWeightsFile.writeDouble(docLength);
+
+        // write the doc size to file
+        mWeightsFile.writeDouble(byteSize);
+
+        // write the average tf count to file
+        avgTermFrequency /= mDocTermFrequency.keySet().size(); // the average tf for the doc
+        mWeightsFile.writeDouble(avgTermFrequency);
+    }
+
+    /**
+     * Write the partial index to a new sorted run and clear it.
+     */
+    private void flushRun() throws IOException {
+        File run = new File(mRunFolder, "run" + mWorkerID + "_" + mRuns.size() + ".bin");
+        PostingsRun.write(run, mIndex);
+        mRuns.add(run);
+        mIndex.clear();
+    }
+
+    /**
+     * @return the weights file of the worker, 32 bytes for each document
+     */
+    File getWeightsFile() {
+        return new File(mRunFolder, "weights" + mWorkerID + ".bin");
+    }
+
+    /**
+     * @return the sorted runs flushed by the worker in document ID order
+     */
+    List<File> getRuns() {
+        return mRuns;
+    }
+
+    /**
+     * @return the partial index if it was not flushed at the end
+     */
+    PositionalInvertedIndex getIndex() {
+        return mIndex;
+    }
+
+    SortedSet<String> getVocabTree() {
+        return mVocabTree;
+    }
+
+    SoundexIndex getSoundex() {
+        return mSoundex;
+    }
+
+    long getTotalDocLength() {
+        return mTotalDocLength;
+    }
+
+    int getDocumentCount() {
+        return mDocumentCount;
+    }
+
+    /**
+     * @return the exception that stopped the worker, null if it succeeded
+     */
+    Exception getError() {
+        return mError;
+    }
+}
@@ -0,0 +1,105 @@
+package indexes.diskPart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Bitmap of the live documents of an index, the ones that are not deleted.
+ * It is stored as tombstones, the bits of the deleted document IDs, so the
+ * documents added after it was written are live. The document IDs are the
+ * ones of the whole index, across all segments.
+ *
+ * Deleted documents stay in the postings until the IndexWriter compacts the
+ * index; the postings decoders and cursors skip them.
+ */
+final class LiveDocs {
+
+    // file with the bitmap of the deleted documents in the index folder
+    static final String FILE = "deletedDocs.bin";
+
+    private final BitSet mDeleted;
+
+    /**
+     * Creates a bitmap in which all documents are live.
+     */
+    LiveDocs() {
+        mDeleted = new BitSet();
+    }
+
+    private LiveDocs(BitSet deleted) {
+        mDeleted = deleted;
+    }
+
+    /**
+     * Read the bitmap of an index.
+     *
+     * @param indexFolder folder of the index files
+     * @return the bitmap, null if no document of the index is deleted
+     */
+    static LiveDocs read(File indexFolder) {
+        File file = new File(indexFolder, FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            LiveDocs liveDocs = new LiveDocs(BitSet.valueOf(words));
+            return liveDocs.hasDeletions() ? liveDocs : null;
+        } catch (IOException ex) {
+            System.out.println(ex.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Write the bitmap to an index. It is written to a temporary file first,
+     * so a reader never sees a partial bitmap.
+     *
+     * @param indexFolder folder of the index files
+     */
+    void write(File indexFolder) throws IOException {
+        File tempFile = new File(indexFolder, FILE + ".tmp");
+        long[] words = mDeleted.toLongArray();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(tempFile.toPath(), new File(indexFolder, FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    boolean isLive(int docID) {
+        return !mDeleted.get(docID);
+    }
+
+    void delete(int docID) {
+        mDeleted.set(docID);
+    }
+
+    boolean hasDeletions() {
+        return !mDeleted.isEmpty();
+    }
+
+    /**
+     * @return number of deleted documents
+     */
+    int getDeletedCount() {
+        return mDeleted.cardinality();
+    }
+}
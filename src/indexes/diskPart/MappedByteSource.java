@@ -0,0 +1,67 @@
+package indexes.diskPart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Byte source that maps the whole file into memory. Reads are served from
+ * the page cache without any system calls. The buffer is only read with
+ * absolute gets and duplicates, so its position is never changed.
+ */
+class MappedByteSource implements ByteSource {
+
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Serves bytes that are in memory already, in the same way as the
+     * mapped bytes of a file.
+     * @param buffer the bytes from position 0 to the capacity
+     */
+    MappedByteSource(ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    MappedByteSource(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file is larger than 2 GB");
+            }
+            // the mapping stays valid after the channel is closed
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public long length() {
+        return mBuffer.capacity();
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) {
+        ByteBuffer slice = mBuffer.duplicate();
+        // set position and limit through Buffer to stay compatible with Java 8
+        ((Buffer) slice).limit((int) position + length);
+        ((Buffer) slice).position((int) position);
+        return slice.slice();
+    }
+
+    @Override
+    public int getInt(long position) {
+        return mBuffer.getInt((int) position);
+    }
+
+    @Override
+    public double getDouble(long position) {
+        return mBuffer.getDouble((int) position);
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released when the buffer is garbage collected
+    }
+}
@@ -0,0 +1,154 @@
+package indexes.diskPart;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Least recently used cache of decoded postings lists, keyed by the segment
+ * of the index, the index of the term in the vocabulary of the segment and
+ * whether the positions are decoded. The
+ * cache is limited by the estimated memory of the lists instead of their
+ * number, so a few long lists of common terms cannot crowd out the heap.
+ * The cached lists are shared and must not be modified.
+ */
+public class PostingsCache {
+
+    // system property for the budget of the cache in bytes, 0 turns it off
+    public static final String PROPERTY = "index.postingsCache";
+    public static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+
+    // estimated sizes of the decoded objects on a 64 bit JVM
+    private static final int LIST_BYTES = 40;
+    private static final int POSTING_BYTES = 32;
+    private static final int ARRAY_BYTES = 16;
+    private static final int POSITION_BYTES = 4;
+
+    private final long mCapacity;
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+    private long mByteSize;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param capacity budget of the cache in estimated bytes
+     */
+    public PostingsCache(long capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Get the budget set with the system property index.postingsCache.
+     * @return the default budget in bytes
+     */
+    public static long getDefaultCapacity() {
+        return Long.getLong(PROPERTY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Get the cached postings of a term.
+     * @param segment
+     * @param termIndex
+     * @param withPositions
+     * @return the postings list, null if it is not cached
+     */
+    synchronized List<DiskPosting> get(int segment, int termIndex, boolean withPositions) {
+        Entry entry = mEntries.get(key(segment, termIndex, withPositions));
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return entry.postings;
+    }
+
+    /**
+     * Add the postings of a term and evict the least recently used lists
+     * until the cache fits its budget. Lists larger than the budget are not
+     * cached.
+     * @param segment
+     * @param termIndex
+     * @param withPositions
+     * @param postings
+     */
+    synchronized void put(int segment, int termIndex, boolean withPositions, List<DiskPosting> postings) {
+        long byteSize = estimateByteSize(postings, withPositions);
+        if (byteSize > mCapacity) {
+            return;
+        }
+        Entry previous = mEntries.put(key(segment, termIndex, withPositions), new Entry(postings, byteSize));
+        if (previous != null) {
+            mByteSize -= previous.byteSize;
+        }
+        mByteSize += byteSize;
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while (mByteSize > mCapacity) {
+            mByteSize -= eldest.next().byteSize;
+            eldest.remove();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Remove all postings from the cache. The counters are kept.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mByteSize = 0;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * @return estimated number of bytes of the cached postings
+     */
+    public synchronized long getByteSize() {
+        return mByteSize;
+    }
+
+    public long getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "postings cache: " + mEntries.size() + " lists, " + mByteSize + " of " + mCapacity
+                + " bytes, " + mHits + " hits, " + mMisses + " misses, " + mEvictions + " evictions";
+    }
+
+    private static Long key(int segment, int termIndex, boolean withPositions) {
+        return ((long) segment << 32) | ((long) termIndex << 1) | (withPositions ? 1 : 0);
+    }
+
+    private static long estimateByteSize(List<DiskPosting> postings, boolean withPositions) {
+        long byteSize = LIST_BYTES + (long) postings.size() * POSTING_BYTES;
+        if (withPositions) {
+            for (DiskPosting posting : postings) {
+                byteSize += ARRAY_BYTES + (long) posting.getPositionCount() * POSITION_BYTES;
+            }
+        }
+        return byteSize;
+    }
+
+    private static class Entry {
+
+        private final List<DiskPosting> postings;
+        private final long byteSize;
+
+        private Entry(List<DiskPosting> postings, long byteSize) {
+            this.postings = postings;
+            this.byteSize = byteSize;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package indexes.diskPart;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Iterates the document IDs and term frequencies of a postings record
+ * without decoding the whole list. The skip entries of the record let
+ * advance() jump over blocks of postings that end before the target.
+ *
+ * The cursors of a term in the segments of an index are chained in document
+ * ID order, so the cursor moves on to the next segment when its own postings
+ * are exhausted. The postings of deleted documents are skipped.
+ *
+ * A cursor opened with positions decodes the positions of a posting when
+ * getPositions() asks for them. The positions record has no skip entries, so
+ * such a cursor steps through every posting instead of jumping over blocks.
+ */
+public class PostingsCursor {
+
+    private final ByteBuffer mBuffer; // the postings record
+    private final boolean mFixed; // numbers are fixed 4 byte ints instead of variable byte encoded
+    private final int mDocumentFrequency;
+    private final int mSkipInterval; // postings between two skip entries, 0 for no skips
+    private final int[] mSkipDocIds; // document ID before every block
+    private final int[] mSkipOffsets; // byte offset of every block
+    private final int mPostingsStart; // byte offset of the first posting
+    private final LiveDocs mLiveDocs; // null if no document is deleted
+    private final boolean mWithPositions;
+    private final ByteBuffer mPositions; // positions record of the encoded format, null for the fixed format
+    private int mNextSkip; // the next skip entry that may be taken
+    private int mPostingIndex = -1; // index of the current posting
+    private int mDocumentID;
+    private int mTermFrequency;
+    private int mPositionsStart; // byte offset of the positions of the current posting in the fixed format
+    private int[] mCurrentPositions; // decoded positions of the current posting, null until they are read
+    private PostingsCursor mNextSegment; // cursor of the term in the next segment, null for none
+    private boolean mInNextSegment; // the own postings are exhausted, the next segment is current
+
+    /**
+     * Opens a cursor on a postings record.
+     *
+     * @param record the postings record, positioned at the document frequency
+     * @param format format of the postings file
+     */
+    PostingsCursor(ByteBuffer record, int format) {
+        this(record, format, null);
+    }
+
+    /**
+     * Opens a cursor on a postings record that skips deleted documents.
+     *
+     * @param record the postings record, positioned at the document frequency
+     * @param format format of the postings file
+     * @param liveDocs the live documents of the index, null if no document is
+     * deleted
+     */
+    PostingsCursor(ByteBuffer record, int format, LiveDocs liveDocs) {
+        this(record, format, liveDocs, false, null);
+    }
+
+    /**
+     * Opens a cursor on a postings record that can decode the positions of
+     * its postings.
+     *
+     * @param record the postings record, positioned at the document frequency
+     * @param format format of the postings file
+     * @param liveDocs the live documents of the index, null if no document is
+     * deleted
+     * @param withPositions
+     * @param positions the positions record of the term, null for the fixed
+     * format, which keeps the positions in the postings record
+     */
+    PostingsCursor(ByteBuffer record, int format, LiveDocs liveDocs, boolean withPositions, ByteBuffer positions) {
+        mBuffer = record;
+        mLiveDocs = liveDocs;
+        mWithPositions = withPositions;
+        mPositions = positions;
+        mFixed = format == DiskInvertedIndex.FORMAT_FIXED;
+        mDocumentFrequency = readNumber();
+        mSkipInterval = mFixed ? 0 : readNumber();
+        int skipCount = mSkipInterval == 0 ? 0 : (mDocumentFrequency - 1) / mSkipInterval;
+        mSkipDocIds = new int[skipCount];
+        mSkipOffsets = new int[skipCount];
+        int lastSkipDocId = 0, lastSkipOffset = 0;
+        for (int skipIndex = 0; skipIndex < skipCount; skipIndex++) {
+            lastSkipDocId += readNumber();
+            lastSkipOffset += readNumber();
+            mSkipDocIds[skipIndex] = lastSkipDocId;
+            mSkipOffsets[skipIndex] = lastSkipOffset;
+        }
+        mPostingsStart = mBuffer.position();
+        if (mWithPositions) {
+            // the positions of the skipped postings would be lost
+            mNextSkip = skipCount;
+        }
+    }
+
+    private int readNumber() {
+        return mFixed ? mBuffer.getInt() : VariableByte.decode(mBuffer);
+    }
+
+    /**
+     * Continue the cursor with the postings of the term in a following
+     * segment, whose document IDs are all greater than the ones of this
+     * cursor.
+     *
+     * @param cursor cursor of the term in the following segment
+     */
+    void append(PostingsCursor cursor) {
+        if (mNextSegment == null) {
+            mNextSegment = cursor;
+        } else {
+            mNextSegment.append(cursor);
+        }
+    }
+
+    /**
+     * Move to the next posting.
+     *
+     * @return false if there are no postings left
+     */
+    public boolean next() {
+        if (!mInNextSegment) {
+            if (nextInSegment()) {
+                return true;
+            }
+            if (mNextSegment == null) {
+                return false;
+            }
+            mInNextSegment = true;
+        }
+        return mNextSegment.next();
+    }
+
+    /**
+     * Move to the first posting with a document ID of at least the target.
+     * Blocks of postings that end before the target are skipped without
+     * decoding them. The cursor never moves backwards.
+     *
+     * @param target document ID
+     * @return false if there is no such posting
+     */
+    public boolean advance(int target) {
+        if (!mInNextSegment) {
+            if (advanceInSegment(target)) {
+                return true;
+            }
+            if (mNextSegment == null) {
+                return false;
+            }
+            mInNextSegment = true;
+        }
+        return mNextSegment.advance(target);
+    }
+
+    /**
+     * Move to the next posting of this segment.
+     */
+    private boolean nextInSegment() {
+        do {
+            if (mPostingIndex + 1 >= mDocumentFrequency) {
+                mPostingIndex = mDocumentFrequency;
+                return false;
+            }
+            if (mPositions != null && mPostingIndex >= 0 && mCurrentPositions == null) {
+                // pass over the positions of the current posting
+                for (int positionIndex = 0; positionIndex < mTermFrequency; positionIndex++) {
+                    VariableByte.skip(mPositions);
+                }
+            }
+            mPostingIndex++;
+            mDocumentID += readNumber(); // add the last document ID to decode the gap
+            mTermFrequency = readNumber();
+            mCurrentPositions = null;
+            if (mFixed) {
+                // skip over the positions, the other formats keep them in their own file
+                mPositionsStart = mBuffer.position();
+                ((Buffer) mBuffer).position(mBuffer.position() + 4 * mTermFrequency);
+            }
+        } while (mLiveDocs != null && !mLiveDocs.isLive(mDocumentID));
+        return true;
+    }
+
+    /**
+     * Move to the first posting of this segment with a document ID of at
+     * least the target.
+     */
+    private boolean advanceInSegment(int target) {
+        if (mPostingIndex >= 0 && mPostingIndex < mDocumentFrequency && mDocumentID >= target) {
+            return true;
+        }
+        while (mNextSkip < mSkipDocIds.length) {
+            int blockStart = (mNextSkip + 1) * mSkipInterval;
+            if (blockStart > mPostingIndex) {
+                if (mSkipDocIds[mNextSkip] >= target) {
+                    break; // the target may be in the current block
+                }
+                // jump to the posting before the block
+                ((Buffer) mBuffer).position(mPostingsStart + mSkipOffsets[mNextSkip]);
+                mPostingIndex = blockStart - 1;
+                mDocumentID = mSkipDocIds[mNextSkip];
+            }
+            mNextSkip++;
+        }
+        while (nextInSegment()) {
+            if (mDocumentID >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return document ID of the current posting
+     */
+    public int getDocumentID() {
+        return mInNextSegment ? mNextSegment.getDocumentID() : mDocumentID;
+    }
+
+    /**
+     * @return term frequency of the current posting
+     */
+    public int getTermFrequency() {
+        return mInNextSegment ? mNextSegment.getTermFrequency() : mTermFrequency;
+    }
+
+    /**
+     * Get the positions of the term in the document of the current posting.
+     * They are decoded on the first call for the posting.
+     *
+     * @return the positions in increasing order
+     */
+    public int[] getPositions() {
+        if (mInNextSegment) {
+            return mNextSegment.getPositions();
+        }
+        if (!mWithPositions) {
+            throw new IllegalStateException("the cursor was opened without positions");
+        }
+        if (mCurrentPositions == null) {
+            int[] positions = new int[mTermFrequency];
+            int lastPosition = 0;
+            for (int positionIndex = 0; positionIndex < mTermFrequency; positionIndex++) {
+                // add lastPosition to decode the gap
+                int gap = mFixed ? mBuffer.getInt(mPositionsStart + 4 * positionIndex)
+                        : VariableByte.decode(mPositions);
+                lastPosition += gap;
+                positions[positionIndex] = lastPosition;
+            }
+            mCurrentPositions = positions;
+        }
+        return mCurrentPositions;
+    }
+
+    /**
+     * @return number of postings of the term in all segments, with the ones
+     * of deleted documents
+     */
+    public int getDocumentFrequency() {
+        return mNextSegment == null ? mDocumentFrequency
+                : mDocumentFrequency + mNextSegment.getDocumentFrequency();
+    }
+}
@@ -0,0 +1,132 @@
+package indexes.diskPart;
+
+import indexes.PositionalInvertedIndex;
+import indexes.PositionalPosting;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A sorted run of partial postings on disk. The single-pass in-memory indexer
+ * writes one run every time its memory budget is used up; the runs are merged
+ * into the final index once the whole corpus is processed.
+ *
+ * A run file stores the number of terms, followed by every term in sorted
+ * order with its document frequency and postings (document ID, term frequency
+ * and the positions).
+ */
+class PostingsRun {
+
+    private final DataInputStream mInput;
+    private final int mOrder; // position of the run in document ID order
+    private int mTermsLeft; // terms that are not read yet
+    private String mTerm; // the current term
+    private int mDocumentFrequency; // postings of the current term in the run
+    private int[] mPositions = new int[16]; // positions of the posting that is copied
+
+    /**
+     * Opens a run for merging.
+     *
+     * @param file the run file
+     * @param order position of the run in document ID order
+     */
+    PostingsRun(File file, int order) throws IOException {
+        mInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        mOrder = order;
+        mTermsLeft = mInput.readInt();
+    }
+
+    /**
+     * Writes the in-memory index to a run file, terms in sorted order.
+     *
+     * @param file the run file
+     * @param index the in-memory index
+     */
+    static void write(File file, PositionalInvertedIndex index) throws IOException {
+        String[] dictionary = index.getDictionary();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(dictionary.length);
+            for (String term : dictionary) {
+                List<PositionalPosting> postings = index.getPostingsList(term);
+                out.writeUTF(term);
+                out.writeInt(postings.size());
+                for (PositionalPosting p : postings) {
+                    out.writeInt(p.getDocumentID());
+                    out.writeInt(p.getTermFrequency());
+                    for (int positionIndex = 0; positionIndex < p.getTermFrequency(); positionIndex++) {
+                        out.writeInt(p.getPosition(positionIndex));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Advance to the next term of the run. The postings of the current term
+     * have to be copied before.
+     *
+     * @return false if there are no terms left
+     */
+    boolean nextTerm() throws IOException {
+        if (mTermsLeft == 0) {
+            mTerm = null;
+            return false;
+        }
+        mTerm = mInput.readUTF();
+        mDocumentFrequency = mInput.readInt();
+        mTermsLeft--;
+        return true;
+    }
+
+    /**
+     * Copy the postings of the current term to the term that the writer
+     * writes, one posting at a time.
+     *
+     * @param writer
+     */
+    void copyPostings(PostingsWriter writer) throws IOException {
+        for (int i = 0; i < mDocumentFrequency; i++) {
+            int docID = mInput.readInt();
+            int termFrequency = mInput.readInt();
+            if (termFrequency > mPositions.length) {
+                mPositions = new int[Math.max(termFrequency, mPositions.length * 2)];
+            }
+            for (int j = 0; j < termFrequency; j++) {
+                mPositions[j] = mInput.readInt();
+            }
+            writer.addPosting(docID, termFrequency, mPositions);
+        }
+    }
+
+    /**
+     * @return number of postings of the current term in the run
+     */
+    int getDocumentFrequency() {
+        return mDocumentFrequency;
+    }
+
+    /**
+     * @return the current term, null if the run is exhausted
+     */
+    String getTerm() {
+        return mTerm;
+    }
+
+    /**
+     * @return position of the run in document ID order
+     */
+    int getOrder() {
+        return mOrder;
+    }
+
+    void close() throws IOException {
+        mInput.close();
+    }
+}
@@ -0,0 +1,265 @@
+package indexes.diskPart;
+
+import indexes.PositionalPosting;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Writes the vocabulary list, the vocabulary table, the postings file and the
+ * positions file of an index term by term. Terms have to be added in sorted
+ * order. The document IDs and term frequencies are written in the variable
+ * byte format with skip entries, the positions separately so they are read
+ * only by positional queries. The vocabulary table holds the statistics of
+ * every term.
+ *
+ * The postings of a term can be streamed one at a time between startTerm()
+ * and finishTerm(), so a term is never held in memory as a whole: the
+ * positions go straight to the positions file, and the encoded document IDs
+ * and term frequencies, which follow the skip entries, are buffered up to
+ * BUFFER_BYTES and spilled to a temporary file beyond that.
+ */
+class PostingsWriter {
+
+    // postings lists shorter than this are decoded as a whole, without skips
+    private static final int MIN_SKIP_DOCUMENT_FREQUENCY = 16;
+    // encoded postings of a term that are kept in memory before they are spilled
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final String SPILL_FILE = "postings.spill";
+
+    private final File mFolder;
+    private final DataOutputStream mVocabList;
+    private final DataOutputStream mVocabTable;
+    private final DataOutputStream mPostings;
+    private final DataOutputStream mPositions;
+    private long mVocabPosition; // byte position of the next term in the vocab file
+    private long mPostingsPosition; // byte position of the next postings in the postings file
+    private long mPositionsPosition; // byte position of the next positions in the positions file
+    private int mTermCount;
+    private final ByteArrayOutputStream mEncodedPostings; // postings of the current term
+    private OutputStream mSpill; // encoded postings of the current term beyond the buffer, null if none
+    private long mSpilledBytes;
+
+    // the current term
+    private String mTerm;
+    private int mDocumentFrequency;
+    private int mSkipInterval;
+    private int[] mSkipDocIds; // document ID before every block
+    private int[] mSkipOffsets; // byte offset of every block
+    private int mPostingIndex;
+    private int mLastDocId;
+    private long mCollectionFrequency;
+    private int mMaxTermFrequency;
+    private long mTermPositionsPosition; // byte position of the positions of the term
+
+    /**
+     * Creates the four files of the index in the given folder.
+     *
+     * @param folder folder of the index files
+     */
+    PostingsWriter(String folder) throws IOException {
+        mFolder = new File(folder);
+        mEncodedPostings = new ByteArrayOutputStream();
+        mVocabList = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(mFolder, "vocab.bin"))));
+        mVocabTable = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(mFolder, "vocabTable.bin"))));
+        mPostings = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(mFolder, "postings.bin"))));
+        mPositions = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(mFolder, DiskInvertedIndex.POSITIONS_FILE))));
+
+        // the first thing in the vocabTable file is the number of vocab terms,
+        // which is patched in when the writer is closed.
+        mVocabTable.writeInt(0);
+
+        // the postings file starts with a header naming its format
+        mPostings.writeInt(DiskInvertedIndex.POSTINGS_MAGIC);
+        mPostings.writeInt(DiskInvertedIndex.FORMAT_CURRENT);
+        mPostingsPosition = 8;
+    }
+
+    /**
+     * Write the term and its postings to the index files.
+     *
+     * @param term the term, must be greater than all terms added before
+     * @param postings postings of the term in document ID order
+     */
+    void addTerm(String term, List<PositionalPosting> postings) throws IOException {
+        startTerm(term, postings.size());
+        for (PositionalPosting p : postings) {
+            addPosting(p.getDocumentID(), p.getTermFrequency(), p);
+        }
+        finishTerm();
+    }
+
+    /**
+     * Start the postings of a term, they are added with addPosting().
+     *
+     * @param term the term, must be greater than all terms added before
+     * @param documentFrequency number of postings that will be added
+     */
+    void startTerm(String term, int documentFrequency) {
+        mTerm = term;
+        mDocumentFrequency = documentFrequency;
+        // every skipInterval postings a skip entry remembers the document id
+        // before the block and the byte offset of the block.
+        mSkipInterval = getSkipInterval(documentFrequency);
+        int skipCount = mSkipInterval == 0 ? 0 : (documentFrequency - 1) / mSkipInterval;
+        mSkipDocIds = new int[skipCount];
+        mSkipOffsets = new int[skipCount];
+        mPostingIndex = 0;
+        mLastDocId = 0;
+        mCollectionFrequency = 0;
+        mMaxTermFrequency = 0;
+        mTermPositionsPosition = mPositionsPosition;
+        mEncodedPostings.reset();
+        mSpilledBytes = 0;
+    }
+
+    /**
+     * Add the next posting of the current term.
+     *
+     * @param docID document ID, greater than the one of the posting before
+     * @param termFrequency number of positions
+     * @param positions the positions in increasing order, at least
+     * termFrequency of them
+     */
+    void addPosting(int docID, int termFrequency, int[] positions) throws IOException {
+        startPosting(docID, termFrequency);
+        // the positions of the documents follow each other in the positions
+        // file, tf_t,d positions encoded as gaps for every document.
+        int lastPos = 0;
+        for (int positionIndex = 0; positionIndex < termFrequency; positionIndex++) {
+            mPositionsPosition += VariableByte.encode(positions[positionIndex] - lastPos, mPositions);
+            lastPos = positions[positionIndex];
+        }
+    }
+
+    private void addPosting(int docID, int termFrequency, PositionalPosting p) throws IOException {
+        startPosting(docID, termFrequency);
+        int lastPos = 0;
+        for (int positionIndex = 0; positionIndex < termFrequency; positionIndex++) {
+            int position = p.getPosition(positionIndex);
+            mPositionsPosition += VariableByte.encode(position - lastPos, mPositions);
+            lastPos = position;
+        }
+    }
+
+    /**
+     * Encode the document ID and term frequency of a posting, every number
+     * variable byte encoded: 1. document id, encoded as gaps, 2. term
+     * frequency, tf_t,d.
+     */
+    private void startPosting(int docID, int termFrequency) throws IOException {
+        if (mPostingIndex == mDocumentFrequency) {
+            throw new IllegalStateException("more postings than the document frequency of " + mTerm);
+        }
+        if (mSkipInterval > 0 && mPostingIndex > 0 && mPostingIndex % mSkipInterval == 0) {
+            mSkipDocIds[mPostingIndex / mSkipInterval - 1] = mLastDocId;
+            mSkipOffsets[mPostingIndex / mSkipInterval - 1] = (int) (mSpilledBytes + mEncodedPostings.size());
+        }
+        VariableByte.encode(docID - mLastDocId, mEncodedPostings);
+        mLastDocId = docID;
+        VariableByte.encode(termFrequency, mEncodedPostings);
+        mCollectionFrequency += termFrequency;
+        mMaxTermFrequency = Math.max(mMaxTermFrequency, termFrequency);
+        mPostingIndex++;
+        if (mEncodedPostings.size() >= BUFFER_BYTES) {
+            if (mSpill == null) {
+                mSpill = new BufferedOutputStream(new FileOutputStream(new File(mFolder, SPILL_FILE)));
+            }
+            mEncodedPostings.writeTo(mSpill);
+            mSpilledBytes += mEncodedPostings.size();
+            mEncodedPostings.reset();
+        }
+    }
+
+    /**
+     * Write the vocab table entry and the postings record of the current
+     * term.
+     */
+    void finishTerm() throws IOException {
+        if (mPostingIndex != mDocumentFrequency) {
+            throw new IllegalStateException(mPostingIndex + " postings of " + mTerm + " instead of "
+                    + mDocumentFrequency);
+        }
+        // write the vocab table entry for this term: the byte location of the term in the vocab list file,
+        // the byte location of the postings for the term in the postings file,
+        // the byte location of its positions in the positions file,
+        // the document frequency, the collection frequency and the highest term frequency.
+        mVocabTable.writeLong(mVocabPosition);
+        mVocabTable.writeLong(mPostingsPosition);
+        mVocabTable.writeLong(mTermPositionsPosition);
+        mVocabTable.writeInt(mDocumentFrequency);
+        mVocabTable.writeLong(mCollectionFrequency);
+        mVocabTable.writeInt(mMaxTermFrequency);
+
+        byte[] termBytes = mTerm.getBytes("ASCII");
+        mVocabList.write(termBytes);
+        mVocabPosition += termBytes.length;
+
+        // write the postings file for this term: the document frequency df_t,
+        // the skip interval, the skip entries as gaps and the encoded postings
+        mPostingsPosition += VariableByte.encode(mDocumentFrequency, mPostings);
+        mPostingsPosition += VariableByte.encode(mSkipInterval, mPostings);
+        int lastSkipDocId = 0, lastSkipOffset = 0;
+        for (int skipIndex = 0; skipIndex < mSkipDocIds.length; skipIndex++) {
+            mPostingsPosition += VariableByte.encode(mSkipDocIds[skipIndex] - lastSkipDocId, mPostings);
+            mPostingsPosition += VariableByte.encode(mSkipOffsets[skipIndex] - lastSkipOffset, mPostings);
+            lastSkipDocId = mSkipDocIds[skipIndex];
+            lastSkipOffset = mSkipOffsets[skipIndex];
+        }
+        if (mSpill != null) {
+            mSpill.close();
+            mSpill = null;
+            File spillFile = new File(mFolder, SPILL_FILE);
+            Files.copy(spillFile.toPath(), mPostings);
+            spillFile.delete();
+            mPostingsPosition += mSpilledBytes;
+        }
+        mEncodedPostings.writeTo(mPostings);
+        mPostingsPosition += mEncodedPostings.size();
+        mTermCount++;
+        mTerm = null;
+    }
+
+    /**
+     * Get the number of postings between two skip entries, about the square
+     * root of the document frequency. Short postings lists have no skips.
+     *
+     * @param documentFrequency number of postings of the term
+     * @return skip interval, 0 for no skips
+     */
+    private static int getSkipInterval(int documentFrequency) {
+        if (documentFrequency < MIN_SKIP_DOCUMENT_FREQUENCY) {
+            return 0;
+        }
+        return (int) Math.sqrt(documentFrequency);
+    }
+
+    /**
+     * Close the files and write the number of terms to the vocabulary table.
+     */
+    void close() throws IOException {
+        mVocabList.close();
+        mVocabTable.close();
+        mPostings.close();
+        mPositions.close();
+        try (RandomAccessFile table = new RandomAccessFile(new File(mFolder, "vocabTable.bin"), "rw")) {
+            table.writeInt(mTermCount);
+        }
+        if (mSpill != null) {
+            // a term was not finished
+            mSpill.close();
+            new File(mFolder, SPILL_FILE).delete();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package indexes.diskPart;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Byte source that reads a RandomAccessFile with positional reads of its
+ * channel. The file pointer is never moved, so the source can be shared by
+ * many threads.
+ */
+class RandomAccessByteSource implements ByteSource {
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+
+    RandomAccessByteSource(File file) throws FileNotFoundException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return mChannel.size();
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public int getInt(long position) throws IOException {
+        return read(position, 4).getInt(0);
+    }
+
+    @Override
+    public double getDouble(long position) throws IOException {
+        return read(position, 8).getDouble(0);
+    }
+
+    /**
+     * Fill the buffer with the bytes at the given position of the file.
+     * @param buffer
+     * @param position
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
@@ -0,0 +1,29 @@
+package indexes.diskPart;
+
+/**
+ * Statistics of a term as stored in the vocabulary table of the index.
+ */
+public class TermStats {
+
+    private final int mDocumentFrequency; // df_t, number of documents with the term
+    private final long mCollectionFrequency; // cf_t, number of occurrences in the corpus
+    private final int mMaxTermFrequency; // highest tf_t,d of the term
+
+    public TermStats(int documentFrequency, long collectionFrequency, int maxTermFrequency) {
+        mDocumentFrequency = documentFrequency;
+        mCollectionFrequency = collectionFrequency;
+        mMaxTermFrequency = maxTermFrequency;
+    }
+
+    public int getDocumentFrequency() {
+        return mDocumentFrequency;
+    }
+
+    public long getCollectionFrequency() {
+        return mCollectionFrequency;
+    }
+
+    public int getMaxTermFrequency() {
+        return mMaxTermFrequency;
+    }
+}
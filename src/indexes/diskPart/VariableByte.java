@@ -0,0 +1,61 @@
+package indexes.diskPart;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable byte encoding of non-negative integers as described in
+ * Introduction to Information Retrieval (Section 5.3.1). An integer is split
+ * into groups of 7 bits, most significant group first. The high bit is the
+ * continuation bit: it is set in the last byte of an integer only.
+ */
+final class VariableByte {
+
+    private VariableByte() {
+    }
+
+    /**
+     * Write the variable byte encoding of the value.
+     *
+     * @param value non-negative integer
+     * @param out stream to write to
+     * @return number of bytes written
+     */
+    static int encode(int value, OutputStream out) throws IOException {
+        int bytes = 1;
+        while (bytes < 5 && (value >>> (7 * bytes)) != 0) {
+            bytes++;
+        }
+        for (int i = bytes - 1; i > 0; i--) {
+            out.write((value >>> (7 * i)) & 0x7F);
+        }
+        out.write((value & 0x7F) | 0x80);
+        return bytes;
+    }
+
+    /**
+     * Read the next variable byte encoded integer from the buffer.
+     *
+     * @param buffer buffer positioned at the first byte of the integer
+     * @return the decoded integer
+     */
+    static int decode(ByteBuffer buffer) {
+        int value = 0;
+        byte b;
+        while (((b = buffer.get()) & 0x80) == 0) {
+            value = (value << 7) | b;
+        }
+        return (value << 7) | (b & 0x7F);
+    }
+
+    /**
+     * Skip the next variable byte encoded integer of the buffer.
+     *
+     * @param buffer buffer positioned at the first byte of the integer
+     */
+    static void skip(ByteBuffer buffer) {
+        while ((buffer.get() & 0x80) == 0) {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package query.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Iterator over the documents that match all of its operands. The operand
+ * with the fewest documents leads, the others skip ahead to its documents.
+ */
+public class AndIterator extends DocIterator {
+
+    private final DocIterator[] mOperands; // in order of increasing cost
+    private int mDocID = -1;
+
+    /**
+     * @param operands at least one operand
+     */
+    public AndIterator(List<? extends DocIterator> operands) {
+        List<DocIterator> sorted = new ArrayList<DocIterator>(operands);
+        Collections.sort(sorted, new Comparator<DocIterator>() {
+            @Override
+            public int compare(DocIterator i1, DocIterator i2) {
+                return Long.compare(i1.cost(), i2.cost());
+            }
+        });
+        mOperands = sorted.toArray(new DocIterator[0]);
+    }
+
+    @Override
+    public int docID() {
+        return mDocID;
+    }
+
+    @Override
+    public int nextDoc() {
+        return findMatch(mOperands[0].nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return findMatch(mOperands[0].advance(target));
+    }
+
+    /**
+     * Move the other operands to the document of the leading operand until
+     * all of them agree on a document.
+     *
+     * @param docID the document of the leading operand
+     * @return the matching document ID, NO_MORE_DOCS if there is none
+     */
+    private int findMatch(int docID) {
+        int i = 1;
+        while (docID != NO_MORE_DOCS && i < mOperands.length) {
+            int operandDocID = mOperands[i].docID();
+            if (operandDocID < docID) {
+                operandDocID = mOperands[i].advance(docID);
+            }
+            if (operandDocID == docID) {
+                i++;
+            } else if (operandDocID == NO_MORE_DOCS) {
+                docID = NO_MORE_DOCS;
+            } else {
+                // start over from the next document of the leading operand
+                docID = mOperands[0].advance(operandDocID);
+                i = 1;
+            }
+        }
+        mDocID = docID;
+        return docID;
+    }
+
+    @Override
+    public long cost() {
+        return mOperands[0].cost();
+    }
+}
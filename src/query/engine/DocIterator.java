@@ -0,0 +1,42 @@
+package query.engine;
+
+/**
+ * Iterator over the document IDs that match a part of a query, in
+ * increasing order. The operators of a compiled query are document
+ * iterators over the iterators of their parts, so a query is evaluated one
+ * document at a time and no intermediate postings list is built.
+ *
+ * An iterator starts before its first document, with docID() -1.
+ */
+public abstract class DocIterator {
+
+    // document ID of an exhausted iterator
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * @return the current document ID, -1 before the first document,
+     * NO_MORE_DOCS when the iterator is exhausted
+     */
+    public abstract int docID();
+
+    /**
+     * Move to the next matching document.
+     *
+     * @return the document ID, NO_MORE_DOCS if there is none
+     */
+    public abstract int nextDoc();
+
+    /**
+     * Move to the first matching document with an ID of at least the target.
+     * The target must be greater than the current document ID.
+     *
+     * @param target document ID
+     * @return the document ID, NO_MORE_DOCS if there is none
+     */
+    public abstract int advance(int target);
+
+    /**
+     * @return estimated number of documents of the iterator, an upper bound
+     */
+    public abstract long cost();
+}
@@ -0,0 +1,94 @@
+package query.engine;
+
+import java.util.List;
+
+/**
+ * A literal of an AND query with the estimated number of documents it
+ * matches, as planned by the QueryPlanner.
+ */
+final class LiteralPlan {
+
+    enum Kind {
+        TERM, PHRASE, NEAR, WILDCARD
+    }
+
+    private final Kind mKind;
+    private final String mLiteral; // the literal of the query
+    private final List<String> mTerms; // the term, the stemmed terms of a phrase or the terms of a wildcard
+    private final LiteralPlan mLeft; // operands of a NEAR literal, null for the other kinds
+    private final LiteralPlan mRight;
+    private final int mK;
+    private final long mEstimate;
+
+    /**
+     * Plan of a term, phrase or wildcard.
+     *
+     * @param kind
+     * @param literal
+     * @param terms
+     * @param estimate estimated number of documents, 0 if the literal cannot
+     * match
+     */
+    LiteralPlan(Kind kind, String literal, List<String> terms, long estimate) {
+        this(kind, literal, terms, null, null, 0, estimate);
+    }
+
+    /**
+     * Plan of a NEAR literal.
+     *
+     * @param literal
+     * @param left
+     * @param right
+     * @param k max positions that the right operand appears after the left
+     */
+    LiteralPlan(String literal, LiteralPlan left, LiteralPlan right, int k) {
+        this(Kind.NEAR, literal, null, left, right, k, Math.min(left.getEstimate(), right.getEstimate()));
+    }
+
+    private LiteralPlan(Kind kind, String literal, List<String> terms, LiteralPlan left, LiteralPlan right,
+            int k, long estimate) {
+        mKind = kind;
+        mLiteral = literal;
+        mTerms = terms;
+        mLeft = left;
+        mRight = right;
+        mK = k;
+        mEstimate = estimate;
+    }
+
+    Kind getKind() {
+        return mKind;
+    }
+
+    String getLiteral() {
+        return mLiteral;
+    }
+
+    List<String> getTerms() {
+        return mTerms;
+    }
+
+    LiteralPlan getLeft() {
+        return mLeft;
+    }
+
+    LiteralPlan getRight() {
+        return mRight;
+    }
+
+    int getK() {
+        return mK;
+    }
+
+    /**
+     * @return estimated number of documents of the literal, an upper bound
+     */
+    long getEstimate() {
+        return mEstimate;
+    }
+
+    @Override
+    public String toString() {
+        return mKind.toString().toLowerCase() + " " + mLiteral;
+    }
+}
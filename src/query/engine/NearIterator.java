@@ -0,0 +1,75 @@
+package query.engine;
+
+import java.util.Arrays;
+import query.processor.PositionalMatcher;
+
+/**
+ * Iterator over the documents in which the right operand appears 1 to k
+ * positions after the left operand.
+ */
+public class NearIterator extends PositionsIterator {
+
+    private final PositionsIterator mLeft;
+    private final PositionsIterator mRight;
+    private final int mK;
+    private final AndIterator mDocuments;
+    private int[] mPositions; // null until they are asked for
+
+    /**
+     * @param left
+     * @param right
+     * @param k max positions that the right operand appears after the left
+     */
+    public NearIterator(PositionsIterator left, PositionsIterator right, int k) {
+        mLeft = left;
+        mRight = right;
+        mK = k;
+        mDocuments = new AndIterator(Arrays.asList(left, right));
+    }
+
+    @Override
+    public int docID() {
+        return mDocuments.docID();
+    }
+
+    @Override
+    public int nextDoc() {
+        return findMatch(mDocuments.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return findMatch(mDocuments.advance(target));
+    }
+
+    /**
+     * Move to the first document in which the operands are near each other,
+     * starting from a document that contains both.
+     *
+     * @param docID
+     * @return the document ID, NO_MORE_DOCS if there is none
+     */
+    private int findMatch(int docID) {
+        mPositions = null;
+        while (docID != NO_MORE_DOCS) {
+            if (PositionalMatcher.isFollowed(mLeft.getPositions(), mRight.getPositions(), mK)) {
+                return docID;
+            }
+            docID = mDocuments.nextDoc();
+        }
+        return docID;
+    }
+
+    @Override
+    public long cost() {
+        return mDocuments.cost();
+    }
+
+    @Override
+    public int[] getPositions() {
+        if (mPositions == null) {
+            mPositions = PositionalMatcher.followingPositions(mLeft.getPositions(), mRight.getPositions(), mK);
+        }
+        return mPositions;
+    }
+}
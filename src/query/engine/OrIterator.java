@@ -0,0 +1,84 @@
+package query.engine;
+
+import java.util.List;
+
+/**
+ * Iterator over the documents that match any of its operands. The operands
+ * are kept in a min-heap by their current document, so moving on costs
+ * O(log k) for every operand on the current document, and the OR of a
+ * wildcard with hundreds of terms stays linear in their postings.
+ */
+public class OrIterator extends DocIterator {
+
+    private final DocIterator[] mHeap; // the operand on the lowest document first
+    private final long mCost;
+    private int mDocID = -1;
+
+    /**
+     * @param operands at least one operand, none of them started
+     */
+    public OrIterator(List<? extends DocIterator> operands) {
+        // the operands are all before their first document, so they are a heap
+        mHeap = operands.toArray(new DocIterator[0]);
+        long cost = 0;
+        for (DocIterator operand : mHeap) {
+            cost += operand.cost();
+        }
+        mCost = cost;
+    }
+
+    @Override
+    public int docID() {
+        return mDocID;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (mDocID == NO_MORE_DOCS) {
+            return NO_MORE_DOCS;
+        }
+        // move on the operands of the current document
+        while (mHeap[0].docID() == mDocID) {
+            mHeap[0].nextDoc();
+            siftDown();
+        }
+        mDocID = mHeap[0].docID();
+        return mDocID;
+    }
+
+    @Override
+    public int advance(int target) {
+        while (mHeap[0].docID() < target) {
+            mHeap[0].advance(target);
+            siftDown();
+        }
+        mDocID = mHeap[0].docID();
+        return mDocID;
+    }
+
+    /**
+     * Move the first operand down to its place after its document changed.
+     */
+    private void siftDown() {
+        DocIterator operand = mHeap[0];
+        int docID = operand.docID();
+        int i = 0;
+        while (2 * i + 1 < mHeap.length) {
+            int child = 2 * i + 1;
+            if (child + 1 < mHeap.length && mHeap[child + 1].docID() < mHeap[child].docID()) {
+                child++;
+            }
+            if (mHeap[child].docID() >= docID) {
+                break;
+            }
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = operand;
+    }
+
+    @Override
+    public long cost() {
+        return mCost;
+    }
+}
@@ -0,0 +1,126 @@
+package query.engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import query.processor.PositionalMatcher;
+
+/**
+ * Iterator over the documents in which the terms of a phrase appear next to
+ * each other, in order. The documents of all terms are matched first, the
+ * positions are only read for the documents that contain every term, and
+ * then every term is one pass over its positions, from the rarest term.
+ *
+ * An operand can also be a pair of adjacent terms from the biword index,
+ * with the positions of its first term, at the offset of its first term.
+ */
+public class PhraseIterator extends PositionsIterator {
+
+    private final PositionsIterator[] mOperands; // the operands
+    private final int[] mOffsets; // offset of every operand in the phrase
+    private final int mLength; // number of terms of the phrase
+    private final int[] mOrder; // indexes of the operands, from the rarest
+    private final AndIterator mDocuments;
+    private int[] mStarts; // starts of the phrase in the current document
+    private int mStartCount;
+    private int[] mPositions; // null until they are asked for
+
+    /**
+     * @param terms iterators of the terms in phrase order, opened with
+     * positions
+     */
+    public PhraseIterator(List<? extends PositionsIterator> terms) {
+        this(terms, offsetsInOrder(terms.size()), terms.size());
+    }
+
+    /**
+     * @param operands iterators of the terms or pairs of terms of the
+     * phrase, opened with positions, together they cover every term
+     * @param offsets offset in the phrase of every operand
+     * @param length number of terms of the phrase
+     */
+    public PhraseIterator(List<? extends PositionsIterator> operands, int[] offsets, int length) {
+        mOperands = operands.toArray(new PositionsIterator[0]);
+        mOffsets = offsets;
+        mLength = length;
+        Integer[] order = new Integer[mOperands.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Long.compare(mOperands[i1].cost(), mOperands[i2].cost());
+            }
+        });
+        mOrder = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            mOrder[i] = order[i];
+        }
+        mDocuments = new AndIterator(operands);
+    }
+
+    private static int[] offsetsInOrder(int termCount) {
+        int[] offsets = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            offsets[i] = i;
+        }
+        return offsets;
+    }
+
+    @Override
+    public int docID() {
+        return mDocuments.docID();
+    }
+
+    @Override
+    public int nextDoc() {
+        return findMatch(mDocuments.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return findMatch(mDocuments.advance(target));
+    }
+
+    /**
+     * Move to the first document that contains the phrase, starting from a
+     * document that contains all of its terms. The positions of the rarest
+     * term are the candidate starts, the other terms keep the candidates at
+     * which they appear, and their positions are not read once there are no
+     * candidates left.
+     *
+     * @param docID
+     * @return the document ID, NO_MORE_DOCS if there is none
+     */
+    private int findMatch(int docID) {
+        mPositions = null;
+        while (docID != NO_MORE_DOCS) {
+            int[] rarestPositions = mOperands[mOrder[0]].getPositions();
+            mStarts = PositionalMatcher.startPositions(rarestPositions, mOffsets[mOrder[0]], mStarts);
+            mStartCount = rarestPositions.length;
+            for (int o = 1; o < mOrder.length && mStartCount > 0; o++) {
+                mStartCount = PositionalMatcher.retainStarts(mStarts, mStartCount,
+                        mOperands[mOrder[o]].getPositions(), mOffsets[mOrder[o]]);
+            }
+            if (mStartCount > 0) {
+                return docID;
+            }
+            docID = mDocuments.nextDoc();
+        }
+        return docID;
+    }
+
+    @Override
+    public long cost() {
+        return mDocuments.cost();
+    }
+
+    @Override
+    public int[] getPositions() {
+        if (mPositions == null) {
+            mPositions = PositionalMatcher.endPositions(mStarts, mStartCount, mLength);
+        }
+        return mPositions;
+    }
+}
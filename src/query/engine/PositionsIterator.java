@@ -0,0 +1,16 @@
+package query.engine;
+
+/**
+ * Document iterator that also knows the positions of its match in the
+ * current document, so it can be an operand of a phrase or NEAR operator.
+ */
+public abstract class PositionsIterator extends DocIterator {
+
+    /**
+     * Get the positions of the match in the current document. The position
+     * of a phrase is the one of its last term.
+     *
+     * @return the positions in increasing order
+     */
+    public abstract int[] getPositions();
+}
@@ -0,0 +1,122 @@
+package query.engine;
+
+import indexes.diskPart.DiskInvertedIndex;
+import indexes.diskPart.DiskKGramIndex;
+import indexes.diskPart.PostingsCursor;
+import java.util.List;
+import query.processor.DiskQueryProcessor;
+
+/**
+ * State of the evaluation of one query: the indexes it reads and the
+ * iterators that were opened for it. Every query gets its own context and
+ * its own iterators, so queries on the same indexes can run in parallel.
+ */
+public class QueryContext {
+
+    private final DiskInvertedIndex mIndex;
+    private final DiskKGramIndex mKGramIndex;
+    private int mTermCount; // number of term iterators opened
+
+    /**
+     * @param index positional inverted index of the corpus
+     * @param kGramIndex K-Gram index of the vocabulary types
+     */
+    public QueryContext(DiskInvertedIndex index, DiskKGramIndex kGramIndex) {
+        mIndex = index;
+        mKGramIndex = kGramIndex;
+    }
+
+    /**
+     * Opens an iterator over the documents of a term.
+     *
+     * @param term
+     * @param withPositions true if the iterator is an operand of a phrase or
+     * NEAR operator
+     * @return the iterator, null if the term is not in the index
+     */
+    public TermIterator openTerm(String term, boolean withPositions) {
+        PostingsCursor cursor = withPositions
+                ? mIndex.getPositionsCursor(term) : mIndex.getPostingsCursor(term);
+        if (cursor == null) {
+            return null;
+        }
+        mTermCount++;
+        return new TermIterator(cursor);
+    }
+
+    /**
+     * Opens an iterator over the documents in which the first term is
+     * followed by the second, from the biword index. The positions are the
+     * ones of the first term.
+     *
+     * @param first
+     * @param second
+     * @return the iterator, null if no document has the pair
+     */
+    public TermIterator openBiword(String first, String second) {
+        PostingsCursor cursor = mIndex.getBiwordCursor(first, second);
+        if (cursor == null) {
+            return null;
+        }
+        mTermCount++;
+        return new TermIterator(cursor);
+    }
+
+    /**
+     * @param first
+     * @param second
+     * @return true if the index has a biword index of the pair
+     */
+    public boolean hasBiword(String first, String second) {
+        return mIndex.hasBiword(first, second);
+    }
+
+    /**
+     * Get the number of documents in which the first term is followed by the
+     * second, without reading their postings. Only for pairs of which
+     * hasBiword() is true.
+     *
+     * @param first
+     * @param second
+     * @return document frequency of the pair, 0 if no document has the pair
+     */
+    public int getBiwordFrequency(String first, String second) {
+        return mIndex.getBiwordFrequency(first, second);
+    }
+
+    /**
+     * Get the number of documents of a term from the dictionary, without
+     * reading its postings.
+     *
+     * @param term
+     * @return document frequency of the term, 0 if the term is not found
+     */
+    public int getDocumentFrequency(String term) {
+        return mIndex.getDocumentFrequency(term);
+    }
+
+    /**
+     * Get the terms that a wildcard matches.
+     *
+     * @param wildcard
+     * @return the processed/stemmed terms
+     */
+    public List<String> expandWildcard(String wildcard) {
+        return DiskQueryProcessor.wildcardTerms(wildcard, mKGramIndex);
+    }
+
+    /**
+     * @return number of term iterators opened for the query
+     */
+    public int getTermCount() {
+        return mTermCount;
+    }
+
+    public DiskInvertedIndex getIndex() {
+        return mIndex;
+    }
+
+    public DiskKGramIndex getKGramIndex() {
+        return mKGramIndex;
+    }
+}
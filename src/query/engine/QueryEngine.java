@@ -0,0 +1,281 @@
+package query.engine;
+
+import indexes.diskPart.DiskInvertedIndex;
+import indexes.diskPart.DiskKGramIndex;
+import java.util.ArrayList;
+import java.util.List;
+import query.Subquery;
+
+/**
+ * Evaluates Boolean queries on a disk index. A parsed query is compiled into
+ * a tree of document iterators: an OR of the AND queries Q_i, each an AND of
+ * its literals, which are terms, phrases, NEAR literals and wildcards. The
+ * tree is evaluated one document at a time, every operator skips ahead to
+ * the documents its operands agree on.
+ *
+ * The QueryPlanner estimates the literals from the dictionary first, so the
+ * literals of an AND query are opened from the cheapest and an AND query
+ * with a literal that matches nothing opens no postings. explain() shows the
+ * plan of a query.
+ *
+ * The engine holds no state of a query, every query is compiled with its own
+ * QueryContext, so one engine can serve parallel queries.
+ */
+public class QueryEngine {
+
+    private final DiskInvertedIndex mIndex;
+    private final DiskKGramIndex mKGramIndex;
+
+    /**
+     * @param index positional inverted index of the corpus
+     * @param kGramIndex K-Gram index of the vocabulary types
+     */
+    public QueryEngine(DiskInvertedIndex index, DiskKGramIndex kGramIndex) {
+        mIndex = index;
+        mKGramIndex = kGramIndex;
+    }
+
+    /**
+     * Creates the context of a new query.
+     *
+     * @return query context
+     */
+    public QueryContext newContext() {
+        return new QueryContext(mIndex, mKGramIndex);
+    }
+
+    /**
+     * Evaluate a query.
+     *
+     * @param allQueries List of subqueries that represents user query
+     * @return IDs of the matching documents in increasing order
+     */
+    public List<Integer> getDocumentList(List<Subquery> allQueries) {
+        List<Integer> documentList = new ArrayList<Integer>();
+        DocIterator query = compile(allQueries, newContext());
+        if (query != null) {
+            for (int docID = query.nextDoc(); docID != DocIterator.NO_MORE_DOCS; docID = query.nextDoc()) {
+                documentList.add(docID);
+            }
+        }
+        return documentList;
+    }
+
+    /**
+     * Compile a query into the OR of its AND queries, as planned by the
+     * QueryPlanner.
+     *
+     * @param allQueries List of subqueries that represents user query
+     * @param context context of the query
+     * @return iterator over the matching documents, null if no document can
+     * match
+     */
+    public DocIterator compile(List<Subquery> allQueries, QueryContext context) {
+        List<DocIterator> andQueries = new ArrayList<DocIterator>();
+        for (List<LiteralPlan> andPlan : QueryPlanner.plan(allQueries, context)) {
+            DocIterator iterator = compileAnd(andPlan, context);
+            if (iterator != null) {
+                andQueries.add(iterator);
+            }
+        }
+        if (andQueries.isEmpty()) {
+            return null;
+        }
+        return andQueries.size() == 1 ? andQueries.get(0) : new OrIterator(andQueries);
+    }
+
+    /**
+     * Explain the evaluation of a query: the order of the literals of every
+     * AND query with their estimated and actual numbers of documents. The
+     * actual numbers are counted by evaluating every literal on its own.
+     *
+     * @param allQueries List of subqueries that represents user query
+     * @return the plan, one line per AND query and literal
+     */
+    public String explain(List<Subquery> allQueries) {
+        StringBuilder explanation = new StringBuilder();
+        List<List<LiteralPlan>> plans = QueryPlanner.plan(allQueries, newContext());
+        long estimate = 0;
+        for (int i = 0; i < plans.size(); i++) {
+            List<LiteralPlan> andPlan = plans.get(i);
+            long andEstimate = QueryPlanner.isEmpty(andPlan) ? 0 : andPlan.get(0).getEstimate();
+            estimate += andEstimate;
+            explanation.append("Q").append(i + 1).append(": estimated ").append(andEstimate)
+                    .append(", actual ").append(count(compileAnd(andPlan, newContext())));
+            if (QueryPlanner.isEmpty(andPlan)) {
+                explanation.append(", not evaluated");
+            }
+            explanation.append('\n');
+            for (int j = 0; j < andPlan.size(); j++) {
+                LiteralPlan literal = andPlan.get(j);
+                explanation.append("  ").append(j + 1).append(". ").append(literal)
+                        .append(": estimated ").append(literal.getEstimate())
+                        .append(", actual ").append(count(compileLiteral(literal, newContext())))
+                        .append('\n');
+            }
+        }
+        explanation.append("query: estimated ").append(estimate)
+                .append(", actual ").append(count(compile(allQueries, newContext())));
+        return explanation.toString();
+    }
+
+    /**
+     * Count the documents of an iterator.
+     *
+     * @param iterator
+     * @return number of documents, 0 for a null iterator
+     */
+    private static int count(DocIterator iterator) {
+        int count = 0;
+        if (iterator != null) {
+            while (iterator.nextDoc() != DocIterator.NO_MORE_DOCS) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compile an AND query into the AND of its literals, opened from the
+     * cheapest.
+     *
+     * @param andPlan plan of the AND query
+     * @param context
+     * @return iterator over the matching documents, null if a literal matches
+     * no document
+     */
+    private DocIterator compileAnd(List<LiteralPlan> andPlan, QueryContext context) {
+        if (QueryPlanner.isEmpty(andPlan)) {
+            return null;
+        }
+        List<DocIterator> literals = new ArrayList<DocIterator>();
+        for (LiteralPlan literal : andPlan) {
+            DocIterator iterator = compileLiteral(literal, context);
+            if (iterator == null) {
+                return null;
+            }
+            literals.add(iterator);
+        }
+        return literals.size() == 1 ? literals.get(0) : new AndIterator(literals);
+    }
+
+    /**
+     * Compile a query literal.
+     *
+     * @param literal plan of a term, phrase, NEAR literal or wildcard
+     * @param context
+     * @return iterator over the matching documents, null if no document can
+     * match
+     */
+    private DocIterator compileLiteral(LiteralPlan literal, QueryContext context) {
+        switch (literal.getKind()) {
+            case PHRASE:
+                return compilePhrase(literal, context);
+            case NEAR:
+                return compileNear(literal, context);
+            case WILDCARD:
+                return compileWildcard(literal, context);
+            default:
+                return context.openTerm(literal.getLiteral(), false);
+        }
+    }
+
+    /**
+     * Compile a phrase into the documents in which its stemmed terms are
+     * next to each other. The phrase is covered from its first term with the
+     * pairs of adjacent terms that are in the biword index. A term that no
+     * pair covers is read from its positional postings, unless the pair it
+     * ends is in the biword index; that pair overlaps the pair before.
+     *
+     * @param phrase plan of the phrase
+     * @param context
+     * @return phrase iterator, null if a term or pair is not in the index
+     */
+    private PositionsIterator compilePhrase(LiteralPlan phrase, QueryContext context) {
+        List<String> terms = phrase.getTerms();
+        if (terms.size() == 1) {
+            return context.openTerm(terms.get(0), true);
+        }
+        List<PositionsIterator> operands = new ArrayList<PositionsIterator>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        boolean[] covered = new boolean[terms.size()];
+        for (int i = 0; i + 1 < terms.size(); i++) {
+            if (!covered[i] && context.hasBiword(terms.get(i), terms.get(i + 1))) {
+                TermIterator iterator = context.openBiword(terms.get(i), terms.get(i + 1));
+                if (iterator == null) {
+                    return null;
+                }
+                operands.add(iterator);
+                offsets.add(i);
+                covered[i] = true;
+                covered[i + 1] = true;
+            }
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            if (covered[i]) {
+                continue;
+            }
+            TermIterator iterator;
+            if (i > 0 && context.hasBiword(terms.get(i - 1), terms.get(i))) {
+                iterator = context.openBiword(terms.get(i - 1), terms.get(i));
+                offsets.add(i - 1);
+            } else {
+                iterator = context.openTerm(terms.get(i), true);
+                offsets.add(i);
+            }
+            if (iterator == null) {
+                return null;
+            }
+            operands.add(iterator);
+        }
+        int[] operandOffsets = new int[offsets.size()];
+        for (int i = 0; i < operandOffsets.length; i++) {
+            operandOffsets[i] = offsets.get(i);
+        }
+        return new PhraseIterator(operands, operandOffsets, terms.size());
+    }
+
+    /**
+     * Compile a NEAR literal.
+     *
+     * @param near plan of the NEAR literal
+     * @param context
+     * @return NEAR iterator, null if an operand matches no document
+     */
+    private PositionsIterator compileNear(LiteralPlan near, QueryContext context) {
+        PositionsIterator left = compileNearOperand(near.getLeft(), context);
+        PositionsIterator right = compileNearOperand(near.getRight(), context);
+        if (left == null || right == null) {
+            return null;
+        }
+        return new NearIterator(left, right, near.getK());
+    }
+
+    private PositionsIterator compileNearOperand(LiteralPlan operand, QueryContext context) {
+        if (operand.getKind() == LiteralPlan.Kind.PHRASE) {
+            return compilePhrase(operand, context);
+        }
+        return context.openTerm(operand.getLiteral(), true);
+    }
+
+    /**
+     * Compile a wildcard into the OR of the terms it matches.
+     *
+     * @param wildcard plan of the wildcard, with its terms
+     * @param context
+     * @return iterator over the matching documents, null if no term matches
+     */
+    private DocIterator compileWildcard(LiteralPlan wildcard, QueryContext context) {
+        List<DocIterator> terms = new ArrayList<DocIterator>();
+        for (String term : wildcard.getTerms()) {
+            TermIterator iterator = context.openTerm(term, false);
+            if (iterator != null) {
+                terms.add(iterator);
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        return terms.size() == 1 ? terms.get(0) : new OrIterator(terms);
+    }
+}
@@ -0,0 +1,138 @@
+package query.engine;
+
+import helper.PorterStemmer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import query.Subquery;
+
+/**
+ * Plans the evaluation of a Boolean query before any postings are read. The
+ * number of documents of every literal is estimated from the document
+ * frequencies of the dictionary: a term by its own, a phrase and a NEAR
+ * literal by their rarest part and a wildcard by the sum of its terms. The
+ * parts of a phrase are its terms and the pairs of its terms that are in
+ * the biword index.
+ *
+ * The literals of an AND query are ordered from the cheapest. As soon as a
+ * literal cannot match any document the AND query is empty, the remaining
+ * literals are not planned and none of its postings are opened.
+ */
+final class QueryPlanner {
+
+    // NEAR operator of a literal in the form [term1] near/k [term2]
+    private static final Pattern NEAR = Pattern.compile(" near/(\\d+) ");
+
+    private static final Comparator<LiteralPlan> BY_ESTIMATE = new Comparator<LiteralPlan>() {
+        @Override
+        public int compare(LiteralPlan p1, LiteralPlan p2) {
+            return Long.compare(p1.getEstimate(), p2.getEstimate());
+        }
+    };
+
+    /**
+     * Plan the AND queries of a query.
+     *
+     * @param allQueries List of subqueries that represents user query
+     * @param context context of the query
+     * @return the plan of every AND query, see planAnd()
+     */
+    static List<List<LiteralPlan>> plan(List<Subquery> allQueries, QueryContext context) {
+        List<List<LiteralPlan>> plans = new ArrayList<List<LiteralPlan>>();
+        for (Subquery andQuery : allQueries) {
+            plans.add(planAnd(andQuery, context));
+        }
+        return plans;
+    }
+
+    /**
+     * Plan the literals of an AND query.
+     *
+     * @param andQuery
+     * @param context
+     * @return the literals from the cheapest; if the AND query is empty, the
+     * first literal is the one that matches no document and the literals
+     * after it in the query are left out
+     */
+    static List<LiteralPlan> planAnd(Subquery andQuery, QueryContext context) {
+        List<LiteralPlan> literals = new ArrayList<LiteralPlan>();
+        for (String literal : andQuery.getLiterals()) {
+            LiteralPlan plan = planLiteral(literal, context);
+            literals.add(plan);
+            if (plan.getEstimate() == 0) {
+                break;
+            }
+        }
+        Collections.sort(literals, BY_ESTIMATE);
+        return literals;
+    }
+
+    /**
+     * @param plan plan of an AND query
+     * @return true if the AND query cannot match any document
+     */
+    static boolean isEmpty(List<LiteralPlan> plan) {
+        return plan.isEmpty() || plan.get(0).getEstimate() == 0;
+    }
+
+    /**
+     * Plan a query literal.
+     *
+     * @param literal a term, phrase, NEAR literal or wildcard
+     * @param context
+     * @return plan of the literal
+     */
+    static LiteralPlan planLiteral(String literal, QueryContext context) {
+        Matcher near = NEAR.matcher(literal);
+        if (literal.contains("\"") && !near.find()) {
+            return planPhrase(literal, context);
+        } else if (literal.contains("*")) {
+            List<String> terms = context.expandWildcard(literal);
+            long estimate = 0;
+            for (String term : terms) {
+                estimate += context.getDocumentFrequency(term);
+            }
+            return new LiteralPlan(LiteralPlan.Kind.WILDCARD, literal, terms, estimate);
+        } else if (near.find(0)) {
+            LiteralPlan left = planNearOperand(literal.substring(0, near.start()), context);
+            LiteralPlan right = planNearOperand(literal.substring(near.end()), context);
+            return new LiteralPlan(literal, left, right, Integer.parseInt(near.group(1)));
+        }
+        return new LiteralPlan(LiteralPlan.Kind.TERM, literal, Collections.singletonList(literal),
+                context.getDocumentFrequency(literal));
+    }
+
+    /**
+     * Plan a phrase, estimated by its rarest term or indexed pair of terms.
+     *
+     * @param phraseLiteral A sequential set of terms enclosed in double quotes
+     * @param context
+     * @return plan of the phrase
+     */
+    private static LiteralPlan planPhrase(String phraseLiteral, QueryContext context) {
+        List<String> terms = new ArrayList<String>();
+        long estimate = Long.MAX_VALUE;
+        for (String term : phraseLiteral.replaceAll("\"", "").split(" ")) {
+            String stem = PorterStemmer.getStem(term);
+            terms.add(stem);
+            estimate = Math.min(estimate, context.getDocumentFrequency(stem));
+        }
+        for (int i = 0; i + 1 < terms.size(); i++) {
+            if (context.hasBiword(terms.get(i), terms.get(i + 1))) {
+                estimate = Math.min(estimate, context.getBiwordFrequency(terms.get(i), terms.get(i + 1)));
+            }
+        }
+        return new LiteralPlan(LiteralPlan.Kind.PHRASE, phraseLiteral, terms, estimate);
+    }
+
+    private static LiteralPlan planNearOperand(String operand, QueryContext context) {
+        if (operand.contains("\"")) {
+            return planPhrase(operand, context);
+        }
+        return new LiteralPlan(LiteralPlan.Kind.TERM, operand, Collections.singletonList(operand),
+                context.getDocumentFrequency(operand));
+    }
+}
@@ -0,0 +1,52 @@
+package query.engine;
+
+import indexes.diskPart.PostingsCursor;
+
+/**
+ * Iterator over the documents of a term, read from the postings cursor of
+ * the term.
+ */
+public class TermIterator extends PositionsIterator {
+
+    private final PostingsCursor mCursor;
+    private int mDocID = -1;
+
+    /**
+     * @param cursor postings cursor of the term, opened with positions if the
+     * iterator is an operand of a phrase or NEAR operator
+     */
+    public TermIterator(PostingsCursor cursor) {
+        mCursor = cursor;
+    }
+
+    @Override
+    public int docID() {
+        return mDocID;
+    }
+
+    @Override
+    public int nextDoc() {
+        mDocID = mCursor.next() ? mCursor.getDocumentID() : NO_MORE_DOCS;
+        return mDocID;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (target == NO_MORE_DOCS) {
+            mDocID = NO_MORE_DOCS;
+        } else {
+            mDocID = mCursor.advance(target) ? mCursor.getDocumentID() : NO_MORE_DOCS;
+        }
+        return mDocID;
+    }
+
+    @Override
+    public long cost() {
+        return mCursor.getDocumentFrequency();
+    }
+
+    @Override
+    public int[] getPositions() {
+        return mCursor.getPositions();
+    }
+}
@@ -5,13 +5,12 @@ package query.parser;
 
 import helper.PorterStemmer;
 import query.Subquery;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.PositionalInvertedIndex;
 import indexes.diskPart.DiskInvertedIndex;
-import indexes.diskPart.DiskPosting;
 import token.QueryTokenStream;
 import java.util.*;
-import query.processor.DiskQueryProcessor;
+import query.engine.QueryEngine;
 
 /**
  * Class to parse user query into query literals and
@@ -22,14 +21,14 @@ public class BooleanParser implements QueryParser{
 
     private PositionalInvertedIndex posIndex;
     private DiskInvertedIndex dIndex;
-    private KGramIndex kgIndex;
+    private DiskKGramIndex kgIndex;
 
-    public BooleanParser(PositionalInvertedIndex posIndex, KGramIndex kgIndex) {
+    public BooleanParser(PositionalInvertedIndex posIndex, DiskKGramIndex kgIndex) {
         this.posIndex = posIndex;
         this.kgIndex = kgIndex;
     }
     
-    public BooleanParser(DiskInvertedIndex dIndex, KGramIndex kgIndex) {
+    public BooleanParser(DiskInvertedIndex dIndex, DiskKGramIndex kgIndex) {
         this.dIndex = dIndex;
         this.kgIndex = kgIndex;
     }
@@ -188,25 +187,26 @@ public class BooleanParser implements QueryParser{
      * Takes a string representing a query, returns list of relevant documents
      *
      * @param query A string representing a user query.
-     * @return A list of Positional Postings representing the results of a user
-     * query.
+     * @return A list of the IDs of the documents that match the query.
      */
     @Override
     public List<Integer> getDocumentList(String query) {
 
-        // Parse query, store in a collection, perform the query, return a final postings list.
+        // Parse query, store in a collection, evaluate the query one document at a time.
         List<Subquery> allQueries = collectOrQueries(query);
         //List<PositionalPosting> masterPostings = QueryProcessor.orQuery(allQueries, posIndex, kgIndex);
-        List<DiskPosting> masterPostings = DiskQueryProcessor.orQuery(allQueries, dIndex, kgIndex);        
-        List<Integer> documentList = new ArrayList<Integer>();
-
-        // Constuct a list of document IDs from this final postings list.
-        if (masterPostings.size() > 0) {
-            for (int i = 0; i < masterPostings.size(); i++) {
-                int currentDocID = masterPostings.get(i).getDocumentID();
-                documentList.add(currentDocID);
-            }
-        }
+        List<Integer> documentList = new QueryEngine(dIndex, kgIndex).getDocumentList(allQueries);
         return documentList;
     }
+
+    /**
+     * Explains how a query is evaluated: the order of the literals of every
+     * AND query with their estimated and actual numbers of documents.
+     *
+     * @param query A string representing a user query.
+     * @return the plan of the query, one line per AND query and literal
+     */
+    public String explain(String query) {
+        return new QueryEngine(dIndex, kgIndex).explain(collectOrQueries(query));
+    }
 }
\ No newline at end of file
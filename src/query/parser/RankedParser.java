@@ -4,7 +4,7 @@ package query.parser;
 
 import formulas.FormEnum;
 import query.Subquery;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import token.QueryTokenStream;
 import retrievals.rankedRetrieval.RankedDocument;
@@ -19,13 +19,13 @@ import java.util.*;
 public class RankedParser implements QueryParser{
 
     private DiskInvertedIndex dIndex;
-    private KGramIndex kgIndex;
+    private DiskKGramIndex kgIndex;
 
     public RankedParser(DiskInvertedIndex dIndex) {
         this.dIndex = dIndex;
     }
     
-    public RankedParser(DiskInvertedIndex dIndex, KGramIndex kgIndex) {
+    public RankedParser(DiskInvertedIndex dIndex, DiskKGramIndex kgIndex) {
         this.dIndex = dIndex;
         this.kgIndex = kgIndex;
     }
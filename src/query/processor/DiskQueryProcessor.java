@@ -2,17 +2,16 @@ package query.processor;
 
 import token.TokenProcessorStream;
 import helper.PorterStemmer;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskSoundexIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import indexes.diskPart.DiskPosting;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.Scanner;
-import query.Subquery;
+import java.util.regex.Pattern;
 
 /**
  * Class to process various types of queries
@@ -20,110 +19,39 @@ import query.Subquery;
  */
 public class DiskQueryProcessor {
 
-        private static List<List<DiskPosting>> andCollection = new ArrayList<List<DiskPosting>>();
-
     /**
-     * Add the positional postings list of an AND query to the collection of AND
-     * query positional postings lists.
+     * Retrieve a list of positional postings that match the wildcard query
      *
-     * @param andQueryLiterals
-     * @param dIndex Positional inverted index of selected corpus
-     * @param kgIndex KGram index of all types in corpus
+     * @param wcQuery the wildcard query from user input
+     * @param index positional inverted index of the corpus
+     * @param kGramIndex K-Gram index of the vocabulary type
+     * @return list of resulting Positional Postings
      */
-    private static void addAndQuery(Subquery andQueryLiterals, DiskInvertedIndex dIndex,
-            KGramIndex kgIndex) {
-
-        List<DiskPosting> masterList = new ArrayList<DiskPosting>();
-        String preLiteral = andQueryLiterals.getLiterals().get(0);
-        List<DiskPosting> intermediateList = new ArrayList<DiskPosting>();
-     
-        if (preLiteral.contains("\"") && !preLiteral.contains("near")) {
-            masterList = phraseQuery(preLiteral, dIndex);
-        } else if (preLiteral.contains("*")) {
-            masterList = wildcardQuery(preLiteral, dIndex, kgIndex);
-        } else if (preLiteral.contains("near")) {
-            masterList = nearQuery(preLiteral, dIndex);
-        } else if (dIndex.getPostings(preLiteral) != null) {
-            masterList = dIndex.getPostings(preLiteral);
-        }
-
-        /* Merge all of the postings lists of each query literal
-        of a given AND query into one master postings list. */
-        if (andQueryLiterals.getSize() > 1) {
-
-            for (int i = 1; i < andQueryLiterals.getSize(); i++) {
-                String currentLiteral = andQueryLiterals.getLiterals().get(i);
-
-                if (currentLiteral.contains("\"")) {
-                    intermediateList = phraseQuery(currentLiteral, dIndex);
-                    if (masterList != null && intermediateList != null) {
-                        masterList = intersectList(masterList, intermediateList);
-                    }
-                } else if (currentLiteral.contains("*")) {
-                    intermediateList = wildcardQuery(currentLiteral, dIndex, kgIndex);
-                    masterList = intersectList(masterList, intermediateList);
-                } else if (currentLiteral.contains("near")) {
-                    intermediateList = nearQuery(currentLiteral, dIndex);
-                    masterList = intersectList(masterList, intermediateList);
-                } else if (dIndex.getPostings(currentLiteral) != null) {
-                    masterList = intersectList(masterList, dIndex.getPostings(currentLiteral));
-                } else {
-                    masterList.clear();
-                }
+    public static List<DiskPosting> wildcardQuery(String wcQuery, DiskInvertedIndex index, DiskKGramIndex kGramIndex) {
+        List<List<DiskPosting>> termPostings = new ArrayList<List<DiskPosting>>();
+
+        // OR together the postings for the processed/stemmed term from each candidate
+        for (String term : wildcardTerms(wcQuery, kGramIndex)) {
+            List<DiskPosting> postings = index.getPostings(term);
+            if (postings != null) {
+                termPostings.add(postings);
             }
         }
-        // Add this AND postings list to the collection of AND postings lists
-        if (masterList != null) {
-            andCollection.add(masterList);
-        } else {
-            andCollection.add(masterList);
-            masterList.clear();
-        }
+        return KWayUnion.union(termPostings);
     }
-    
-    /**
-     * Run all AND Queries Q_i, store results in collection of positional
-     * postings lists, then run an OR query that merges all postings lists into
-     * one master positional postings list representing the entire query.
-     *
-     * @param allQueries List of subqueries that represents user query
-     * @param dIndex Positional inverted index of selected corpus
-     * @param kgIndex KGram index of all types in corpus
-     * @return Positional Posting list representing all AND queries merged
-     * together using OR logic.
-     */
-    public static List<DiskPosting> orQuery(List<Subquery> allQueries, DiskInvertedIndex dIndex, KGramIndex kgIndex) {
 
-        // Add all Q_i positional postings lists to AndCollection
-        for (int i = 0; i < allQueries.size(); i++) {
-            addAndQuery(allQueries.get(i), dIndex, kgIndex);
-        }
-
-        // Merge all Q_i postings list into Master List using OR intersection
-        List<DiskPosting> masterList = andCollection.get(0);
-
-        if (andCollection.size() > 1) {
-            for (int i = 1; i < andCollection.size(); i++) {
-                masterList = unionList(masterList, andCollection.get(i));
-            }
-        }
-        andCollection.clear();
-        return masterList;
-    }
-    
-  /**
-     * Retrieve a list of positional postings that match the wildcard query
+    /**
+     * Get the terms of the index that a wildcard query matches
      *
      * @param wcQuery the wildcard query from user input
-     * @param index positional inverted index of the corpus
      * @param kGramIndex K-Gram index of the vocabulary type
-     * @return list of resulting Positional Postings
+     * @return the processed/stemmed terms of the matching vocabulary types
      */
-    public static List<DiskPosting> wildcardQuery(String wcQuery, DiskInvertedIndex index, KGramIndex kGramIndex) {
+    public static List<String> wildcardTerms(String wcQuery, DiskKGramIndex kGramIndex) {
 
         // Generate all the k-grams for the wildcard
         SortedSet<String> wcKGrams = new TreeSet<String>();
-        List<DiskPosting> results = new ArrayList<DiskPosting>();
+        List<String> terms = new ArrayList<String>();
 
         // Append '$' if the beginning or end of the wildcard
         String modifiedQuery = wcQuery;
@@ -146,131 +74,40 @@ public class DiskQueryProcessor {
                 wcKGrams.add(fragment); // 1-,2-, or 3-grams
             }
         }
+        if (wcKGrams.isEmpty()) { // the query is only '*'
+            return terms;
+        }
 
         // Convert treeset to array to make iterating easier
         String[] kgrams = new String[wcKGrams.size()];
         kgrams = wcKGrams.toArray(kgrams);
 
-        // Merge the postings list of each k-gram
-        List<String> candidates = new ArrayList<String>();
-        if (kGramIndex.getPostingsList(kgrams[0]) != null) {
-            candidates = kGramIndex.getPostingsList(kgrams[0]);
-            for (int i = 1; i < kgrams.length; i++) {
-                if (kGramIndex.getPostingsList(kgrams[i]) != null) {
-                    candidates = intersectList(candidates, kGramIndex.getPostingsList(kgrams[i]));
-                } else { // return if no matches
-                    return results;
-                }
-            }
-        } else { // return if no matches
-            return results;
-        }
-
-        // Remove candidates that do not match the original query
-        Iterator<String> iter = candidates.iterator();
-        while (iter.hasNext()) {
-            if (!iter.next().matches(wcQuery.replace("*", ".*"))) {
-                iter.remove();
-            }
+        // Merge the type IDs of each k-gram
+        int[] candidateIds = kGramIndex.getTypeIds(kgrams[0]);
+        if (candidateIds == null) { // return if no matches
+            return terms;
         }
-
-        // OR together the postings for the processed/stemmed term from each candidate    
-        for (String candidate : candidates) { // will skip if candidates is empty
-            // process and stem the token
-            TokenProcessorStream t = new TokenProcessorStream(candidate);
-            while (t.hasNextToken()) {
-                String term = PorterStemmer.getStem(t.nextToken());
-                if (index.getPostings(term) != null) {
-                    results = unionList(results, index.getPostings(term));
-                }
-
+        for (int i = 1; i < kgrams.length; i++) {
+            int[] typeIds = kGramIndex.getTypeIds(kgrams[i]);
+            if (typeIds == null) { // return if no matches
+                return terms;
             }
+            candidateIds = intersectIds(candidateIds, typeIds);
         }
-        return results;
-} 
-    
-    /**
-     * Uses positional intersection algorithm to merge all phrase terms into one
-     * final list representing the results for the entire phrase.
-     *
-     * @param phraseLiteral A sequential set of terms enclosed in double quotes
-     * @param dIndex Positional inverted index of selected corpus
-     * @return A DiskPosting list of the results of the phrase query.
-     */
-    public static List<DiskPosting> phraseQuery(String phraseLiteral, DiskInvertedIndex dIndex) {
-        phraseLiteral = phraseLiteral.replaceAll("\"", "");
-        String[] spPhrase = phraseLiteral.split(" ");
-        List<DiskPosting> phraseList = new ArrayList<DiskPosting>(); //= new ArrayList<DiskPosting>();
-
-        for (int i = 0; i < spPhrase.length; i++) {
-            spPhrase[i] = PorterStemmer.getStem(spPhrase[i]);
-        }
-
-        if (dIndex.getPostingsWithPositions(spPhrase[0]) != null) {
-            phraseList = dIndex.getPostingsWithPositions(spPhrase[0]);
-            for (int j = 1; j < spPhrase.length; j++) {
-                if (dIndex.getPostingsWithPositions(spPhrase[j]) != null) {               
-                    phraseList = positionalIntersect(phraseList,
-                            dIndex.getPostingsWithPositions(spPhrase[j]), 1);
-                } else { // return empty list
-                    phraseList.clear();
-                    return phraseList;
 
+        // Remove candidates that do not match the original query
+        Pattern wcPattern = Pattern.compile(wcQuery.replace("*", ".*"));
+        for (int typeId : candidateIds) {
+            String candidate = kGramIndex.getType(typeId);
+            if (wcPattern.matcher(candidate).matches()) {
+                // process and stem the token
+                TokenProcessorStream t = new TokenProcessorStream(candidate);
+                while (t.hasNextToken()) {
+                    terms.add(PorterStemmer.getStem(t.nextToken()));
                 }
             }
-        } else { // return empty list
-            return phraseList;
         }
-        return phraseList;
-    }
-    
-    /**
-     * Uses disk intersection algorithm to merge two terms in a string
-     * literal that contains the NEAR operator.
-     *
-     * @param nearLiteral Near literal in the form [term1] near[k] [term2]
-     * @param dIndex Positional inverted index of selected corpus
-     * @return List resulting from the disk intersect of term1 and term2
-     */
-    public static List<DiskPosting> nearQuery(String nearLiteral, DiskInvertedIndex dIndex) {
-        
-        Scanner nearSearcher = new Scanner(nearLiteral);
-        List<DiskPosting> nearList = new ArrayList<DiskPosting>();
-        List<DiskPosting> leftList = new ArrayList<DiskPosting>();
-        List<DiskPosting> rightList = new ArrayList<DiskPosting>();
-        
-        // https://docs.oracle.com/javase/tutorial/java/data/converting.html                    
-        int k = 0;
-        
-        while(nearSearcher.hasNext()){
-            String nearCandidate = nearSearcher.next();
-            if (nearCandidate.startsWith("near")){
-                k = Integer.valueOf(nearCandidate.substring(5));
-                break;
-            }
-        }
-        
-        String[] spNear = nearLiteral.split(" near/[\\d+] ");
-        
-        if (spNear[0].contains("\"")){
-            leftList = phraseQuery(spNear[0], dIndex);
-        } else {
-            if(dIndex.getPostingsWithPositions(spNear[0]) != null){
-                leftList = dIndex.getPostingsWithPositions(spNear[0]);
-            }
-        }
-        if (spNear[1].contains("\"")){
-            rightList = phraseQuery(spNear[1], dIndex);
-        } else {
-            if(dIndex.getPostingsWithPositions(spNear[1]) != null){
-                rightList = dIndex.getPostingsWithPositions(spNear[1]);
-            }   
-        }
-        
-        if (leftList.size() > 0 && rightList.size() > 0) {
-            nearList = positionalIntersect(leftList, rightList, k);
-        }
-        return nearList;
+        return terms;
     }
 
     /**
@@ -281,15 +118,41 @@ public class DiskQueryProcessor {
      * @return list of document IDs that match the author's name
      */
     public static List<Integer> authorQuery(String aQuery, DiskSoundexIndex sIndex) {
-        List<Integer> result = new ArrayList<Integer>();
+        List<List<Integer>> namePostings = new ArrayList<List<Integer>>();
         TokenProcessorStream t = new TokenProcessorStream(aQuery);
         while (t.hasNextToken()) {
-            String name = t.nextToken();
-            if (sIndex.getPostings(name) != null) {
-                result = unionList(result, sIndex.getPostings(name));
+            List<Integer> postings = sIndex.getPostings(t.nextToken());
+            if (postings != null) {
+                namePostings.add(postings);
             }
         }
-        return result;
+        return KWayUnion.union(namePostings);
+    }
+
+    /**
+     * Get the intersection of two sorted arrays of IDs
+     *
+     * @param ids1
+     * @param ids2
+     * @return sorted IDs that are in both arrays
+     */
+    public static int[] intersectIds(int[] ids1, int[] ids2) {
+        int[] result = new int[Math.min(ids1.length, ids2.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids1.length && j < ids2.length) {
+            if (ids1[i] == ids2[j]) {
+                result[size++] = ids1[i];
+                i++;
+                j++;
+            } else if (ids1[i] < ids2[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
     }
 
     /**
@@ -362,83 +225,4 @@ public class DiskQueryProcessor {
 
         return result;
     }
-
-/**
-     * Positional intersection of two terms where the second term appears within
-     * k positions after the first. Source: Introduction to Information
-     * Retrieval (Figure 2.12)
-     *
-     * @param term1 positional postings list of the first term
-     * @param term2 positional postings list of the second term
-     * @param k max positions that term2 appears after term1
-     * @return positional postings list from the intersection; the position
-     * corresponds to term2
-     */
-    public static List<DiskPosting> positionalIntersect(List<DiskPosting> term1, List<DiskPosting> term2, int k) {
-
-        List<DiskPosting> result = new ArrayList<DiskPosting>();
-        List<Integer> docs1 = new ArrayList<Integer>(term1.size()); // term1 documents
-        List<Integer> docs2 = new ArrayList<Integer>(term2.size()); // term2 documents
-        int i = 0; // term1 document index
-        int j = 0; // term2 document index
-
-        // load the docIDs to list
-        for (DiskPosting d : term1) {
-            docs1.add(d.getDocumentID());
-        }
-        for (DiskPosting d : term2) {
-            docs2.add(d.getDocumentID());
-        }
-
-        // intersect the docs
-        while (i < docs1.size() && j < docs2.size()) {
-            // both terms appear in the doc
-            if ((int) docs1.get(i) == docs2.get(j)) {
-                List<Integer> candidate = new ArrayList<Integer>();
-                List<Integer> pp1 = term1.get(i).getPositions(); // term1 positions
-                List<Integer> pp2 = term2.get(j).getPositions(); // term2 positions
-                int ii = 0; // term1 position index
-                int jj = 0; // term2 position index
-                
-                System.out.println("pp1 size: " + pp1.size() + ", pp2 size: " + pp2.size());
-
-                // check if term2 appears within k positions after term1
-                while (ii < pp1.size()) {
-                    while (jj < pp2.size()) {
-                        int relativePos = pp2.get(jj) - pp1.get(ii);
-                        if (relativePos > 0 && relativePos <= k) {
-                            // add term2 position to candidates
-                            candidate.add(pp2.get(jj));
-                        } else if (pp2.get(jj) > pp1.get(ii)) {
-                            break;
-                        }
-                        jj++;
-                    }
-                    // remove duplicate matches
-                    while (!candidate.isEmpty() && Math.abs(candidate.get(0) - pp1.get(ii)) > k) {
-                        candidate.remove(0);
-                    }
-                    // add candidates to the result 
-                    for (Integer pos : candidate) {
-                        int currentIndex = result.size() - 1;
-                        if (!result.isEmpty() && result.get(currentIndex).getDocumentID() == docs1.get(i)) {
-                            // the query appears more than once in the doc
-                            // add the position to existing posting
-                            result.get(currentIndex).addPosition(pos);
-                        } else { // add a new posting to the result 
-                            result.add(new DiskPosting(docs1.get(i), term1.get(i).getTermFrequency(), pos));
-                        }
-                    }
-                    ii++;
-                }
-                i++;
-                j++;
-            } else if (docs1.get(i) < docs2.get(j)) {
-                i++;
-            } else {
-                j++;
-            }
-        }
-          return result;
-    }
 }
\ No newline at end of file
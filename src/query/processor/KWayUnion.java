@@ -0,0 +1,191 @@
+package query.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Union of many sorted lists in one pass. The lists are merged through a
+ * min-heap of their cursors, keyed by the current element of every list, so
+ * the union of k lists with n elements in total takes O(n log k) instead of
+ * the O(n k) of folding the lists together two at a time.
+ */
+public class KWayUnion {
+
+    /**
+     * Get the union of sorted lists. Of equal elements, the one of the
+     * first list is kept, as if the lists were folded together from the
+     * first with unionList().
+     *
+     * @param <T>
+     * @param lists lists of comparable elements in increasing order
+     * @return the elements of all lists in increasing order, without
+     * duplicates
+     */
+    public static <T extends Comparable<? super T>> List<T> union(List<? extends List<T>> lists) {
+        int total = 0;
+        for (List<T> list : lists) {
+            total += list.size();
+        }
+        List<T> result = new ArrayList<T>(total);
+        ListHeap<T> heap = new ListHeap<T>(lists);
+        while (!heap.isEmpty()) {
+            T element = heap.pollTop();
+            if (result.isEmpty() || result.get(result.size() - 1).compareTo(element) != 0) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the union of sorted arrays of IDs.
+     *
+     * @param idArrays arrays of IDs in increasing order
+     * @return the IDs of all arrays in increasing order, without duplicates
+     */
+    public static int[] unionIds(List<int[]> idArrays) {
+        int total = 0;
+        for (int[] ids : idArrays) {
+            total += ids.length;
+        }
+        int[] result = new int[total];
+        int size = 0;
+        IdHeap heap = new IdHeap(idArrays);
+        while (!heap.isEmpty()) {
+            int id = heap.pollTop();
+            if (size == 0 || result[size - 1] != id) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Min-heap of the cursors of sorted lists, ordered by their current
+     * element and then by the index of their list.
+     */
+    private static class ListHeap<T extends Comparable<? super T>> {
+
+        private final List<? extends List<T>> mLists;
+        private final int[] mPositions; // position of the cursor of every list
+        private final int[] mHeap; // indexes of the lists with elements left
+        private int mSize;
+
+        private ListHeap(List<? extends List<T>> lists) {
+            mLists = lists;
+            mPositions = new int[lists.size()];
+            mHeap = new int[lists.size()];
+            for (int list = 0; list < lists.size(); list++) {
+                if (!lists.get(list).isEmpty()) {
+                    mHeap[mSize++] = list;
+                }
+            }
+            for (int i = mSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        /**
+         * Take the smallest element and move the cursor of its list.
+         */
+        private T pollTop() {
+            int list = mHeap[0];
+            T element = mLists.get(list).get(mPositions[list]++);
+            if (mPositions[list] == mLists.get(list).size()) {
+                mHeap[0] = mHeap[--mSize];
+            }
+            siftDown(0);
+            return element;
+        }
+
+        private boolean less(int list1, int list2) {
+            int compareValue = mLists.get(list1).get(mPositions[list1])
+                    .compareTo(mLists.get(list2).get(mPositions[list2]));
+            return compareValue < 0 || compareValue == 0 && list1 < list2;
+        }
+
+        private void siftDown(int i) {
+            int list = mHeap[i];
+            while (2 * i + 1 < mSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < mSize && less(mHeap[child + 1], mHeap[child])) {
+                    child++;
+                }
+                if (!less(mHeap[child], list)) {
+                    break;
+                }
+                mHeap[i] = mHeap[child];
+                i = child;
+            }
+            mHeap[i] = list;
+        }
+    }
+
+    /**
+     * Min-heap of the cursors of sorted arrays of IDs, ordered by their
+     * current ID.
+     */
+    private static class IdHeap {
+
+        private final int[][] mArrays;
+        private final int[] mPositions; // position of the cursor of every array
+        private final int[] mHeap; // indexes of the arrays with IDs left
+        private int mSize;
+
+        private IdHeap(List<int[]> idArrays) {
+            mArrays = idArrays.toArray(new int[0][]);
+            mPositions = new int[mArrays.length];
+            mHeap = new int[mArrays.length];
+            for (int array = 0; array < mArrays.length; array++) {
+                if (mArrays[array].length > 0) {
+                    mHeap[mSize++] = array;
+                }
+            }
+            for (int i = mSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        /**
+         * Take the smallest ID and move the cursor of its array.
+         */
+        private int pollTop() {
+            int array = mHeap[0];
+            int id = mArrays[array][mPositions[array]++];
+            if (mPositions[array] == mArrays[array].length) {
+                mHeap[0] = mHeap[--mSize];
+            }
+            siftDown(0);
+            return id;
+        }
+
+        private int current(int array) {
+            return mArrays[array][mPositions[array]];
+        }
+
+        private void siftDown(int i) {
+            int array = mHeap[i];
+            while (2 * i + 1 < mSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < mSize && current(mHeap[child + 1]) < current(mHeap[child])) {
+                    child++;
+                }
+                if (current(mHeap[child]) >= current(array)) {
+                    break;
+                }
+                mHeap[i] = mHeap[child];
+                i = child;
+            }
+            mHeap[i] = array;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package query.processor;
+
+import java.util.Arrays;
+
+/**
+ * Matches phrases and NEAR operators on the positions of their terms in one
+ * document. A phrase starts from the positions of its rarest term and every
+ * other term is one merged pass over its array of positions, so a match is
+ * linear in the positions of the terms however long the phrase is.
+ */
+public class PositionalMatcher {
+
+    /**
+     * Get the positions at which a phrase ends in a document. Every position
+     * of the term with the fewest positions is a candidate start of the
+     * phrase, the other terms keep the candidates at which they appear at
+     * their offset, from the rarest term.
+     *
+     * @param termPositions positions of every term in phrase order, each in
+     * increasing order
+     * @return positions of the last term of every occurrence of the phrase,
+     * in increasing order
+     */
+    public static int[] phrasePositions(int[][] termPositions) {
+        int termCount = termPositions.length;
+        if (termCount == 0) {
+            return new int[0];
+        }
+        // the terms by their number of positions, phrases are short so insertion sort will do
+        int[] order = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            int j = i;
+            while (j > 0 && termPositions[order[j - 1]].length > termPositions[i].length) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        int[] starts = startPositions(termPositions[order[0]], order[0], null);
+        int count = starts.length;
+        for (int o = 1; o < termCount && count > 0; o++) {
+            count = retainStarts(starts, count, termPositions[order[o]], order[o]);
+        }
+        return endPositions(starts, count, termCount);
+    }
+
+    /**
+     * Get the candidate starts of a phrase from the positions of one of its
+     * terms.
+     *
+     * @param positions positions of the term in increasing order
+     * @param offset offset of the term in the phrase
+     * @param starts array to reuse for the starts, may be null or too short
+     * @return array with the starts in increasing order, as many as there are
+     * positions
+     */
+    public static int[] startPositions(int[] positions, int offset, int[] starts) {
+        if (starts == null || starts.length < positions.length) {
+            starts = new int[positions.length];
+        }
+        for (int i = 0; i < positions.length; i++) {
+            starts[i] = positions[i] - offset;
+        }
+        return starts;
+    }
+
+    /**
+     * Keep the candidate starts of a phrase at which a term appears at its
+     * offset, in one merged pass over both arrays.
+     *
+     * @param starts candidate starts in increasing order, filtered in place
+     * @param count number of candidate starts
+     * @param positions positions of the term in increasing order
+     * @param offset offset of the term in the phrase
+     * @return number of candidate starts left
+     */
+    public static int retainStarts(int[] starts, int count, int[] positions, int offset) {
+        int size = 0;
+        int i = 0;
+        for (int c = 0; c < count; c++) {
+            int target = starts[c] + offset;
+            while (i < positions.length && positions[i] < target) {
+                i++;
+            }
+            if (i == positions.length) {
+                break;
+            }
+            if (positions[i] == target) {
+                starts[size++] = starts[c];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param starts starts of the occurrences of a phrase
+     * @param count number of occurrences
+     * @param termCount number of terms of the phrase
+     * @return positions of the last term of the occurrences
+     */
+    public static int[] endPositions(int[] starts, int count, int termCount) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = starts[i] + termCount - 1;
+        }
+        return positions;
+    }
+
+    /**
+     * Get the positions of the second list that follow a position of the
+     * first list by 1 to k positions. Both lists are merged in one pass.
+     *
+     * @param first positions in increasing order
+     * @param second positions in increasing order
+     * @param k max positions that the second position follows the first
+     * @return the matching positions of the second list
+     */
+    public static int[] followingPositions(int[] first, int[] second, int k) {
+        return matchFollowing(first, second, k, false);
+    }
+
+    /**
+     * @param first positions in increasing order
+     * @param second positions in increasing order
+     * @param k max positions that the second position follows the first
+     * @return true if a position of the second list follows a position of
+     * the first list by 1 to k positions
+     */
+    public static boolean isFollowed(int[] first, int[] second, int k) {
+        return matchFollowing(first, second, k, true).length > 0;
+    }
+
+    private static int[] matchFollowing(int[] first, int[] second, int k, boolean firstOnly) {
+        int[] result = new int[second.length];
+        int size = 0;
+        int i = 0;
+        for (int position : second) {
+            // the first position that is at most k before this one
+            while (i < first.length && first[i] < position - k) {
+                i++;
+            }
+            if (i == first.length) {
+                break;
+            }
+            if (first[i] < position) {
+                result[size++] = position;
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+}
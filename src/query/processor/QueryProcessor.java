@@ -101,13 +101,7 @@ public class QueryProcessor {
         }
 
         // Merge all Q_i postings list into Master List using OR intersection
-        List<PositionalPosting> masterList = andCollection.get(0);
-
-        if (andCollection.size() > 1) {
-            for (int i = 1; i < andCollection.size(); i++) {
-                masterList = unionList(masterList, andCollection.get(i));
-            }
-        }
+        List<PositionalPosting> masterList = KWayUnion.union(andCollection);
         andCollection.clear();
         return masterList;
     }
@@ -176,55 +170,94 @@ public class QueryProcessor {
         }
 
         // OR together the postings for the processed/stemmed term from each candidate    
+        List<List<PositionalPosting>> termPostings = new ArrayList<List<PositionalPosting>>();
         for (String candidate : candidates) { // will skip if candidates is empty
             // process and stem the token
             TokenProcessorStream t = new TokenProcessorStream(candidate);
             while (t.hasNextToken()) {
                 String term = PorterStemmer.getStem(t.nextToken());
                 if (index.getPostingsList(term) != null) {
-                    results = unionList(results, index.getPostingsList(term));
+                    termPostings.add(index.getPostingsList(term));
                 }
 
             }
         }
-        return results;
+        return KWayUnion.union(termPostings);
     }
 
     /**
-     * Uses positional intersection algorithm to merge all phrase terms into one
-     * final list representing the results for the entire phrase.
+     * Get the documents in which all phrase terms appear next to each other.
+     * The postings lists of all terms are intersected at once, from the
+     * rarest, and the positions of every common document are matched in one
+     * pass.
      *
      * @param phraseLiteral A sequential set of terms enclosed in double quotes
      * @param posIndex Positional inverted index of selected corpus
-     * @return A PositionalPosting list of the results of the phrase query.
+     * @return A PositionalPosting list of the results of the phrase query,
+     * with the positions of the last term.
      */
     public static List<PositionalPosting> phraseQuery(String phraseLiteral, PositionalInvertedIndex posIndex) {
         phraseLiteral = phraseLiteral.replaceAll("\"", "");
         String[] spPhrase = phraseLiteral.split(" ");
         List<PositionalPosting> phraseList = new ArrayList<PositionalPosting>();
 
+        List<List<PositionalPosting>> termPostings = new ArrayList<List<PositionalPosting>>();
         for (int i = 0; i < spPhrase.length; i++) {
-            spPhrase[i] = PorterStemmer.getStem(spPhrase[i]);
+            List<PositionalPosting> postings = posIndex.getPostingsList(PorterStemmer.getStem(spPhrase[i]));
+            if (postings == null) { // return empty list
+                return phraseList;
+            }
+            termPostings.add(postings);
         }
 
-        if (posIndex.getPostingsList(spPhrase[0]) != null) {
-            phraseList = posIndex.getPostingsList(spPhrase[0]);
-            for (int j = 1; j < spPhrase.length; j++) {
-                if (posIndex.getPostingsList(spPhrase[j]) != null) {
-                    phraseList = positionalIntersect(phraseList,
-                            posIndex.getPostingsList(spPhrase[j]), 1);
-                } else { // return empty list
-                    phraseList.clear();
-                    return phraseList;
-
+        // the rarest term leads the intersection of the documents
+        int rarest = 0;
+        for (int i = 1; i < termPostings.size(); i++) {
+            if (termPostings.get(i).size() < termPostings.get(rarest).size()) {
+                rarest = i;
+            }
+        }
+        int[] indexes = new int[termPostings.size()]; // posting index of every term
+        int[][] termPositions = new int[termPostings.size()][];
+
+        documents:
+        for (PositionalPosting posting : termPostings.get(rarest)) {
+            int docID = posting.getDocumentID();
+            for (int i = 0; i < termPostings.size(); i++) {
+                List<PositionalPosting> postings = termPostings.get(i);
+                while (indexes[i] < postings.size() && postings.get(indexes[i]).getDocumentID() < docID) {
+                    indexes[i]++;
                 }
+                if (indexes[i] == postings.size()) {
+                    break documents;
+                }
+                if (postings.get(indexes[i]).getDocumentID() != docID) {
+                    continue documents;
+                }
+                termPositions[i] = postings.get(indexes[i]).getPositions();
             }
-        } else { // return empty list 
-            return phraseList;
+            addPositions(phraseList, docID, PositionalMatcher.phrasePositions(termPositions));
         }
         return phraseList;
     }
 
+    /**
+     * Add a posting with the given positions to a list, if there are any.
+     *
+     * @param postings
+     * @param docID
+     * @param positions
+     */
+    private static void addPositions(List<PositionalPosting> postings, int docID, int[] positions) {
+        if (positions.length > 0) {
+            PositionalPosting posting = new PositionalPosting(docID, positions[0]);
+            for (int i = 1; i < positions.length; i++) {
+                posting.addPosition(positions[i]);
+            }
+            postings.add(posting);
+        }
+    }
+
     /**
      * Uses positional intersection algorithm to merge two terms in a string
      * literal that contains the NEAR operator.
@@ -282,15 +315,15 @@ public class QueryProcessor {
      * @return list of document IDs that match the author's name
      */
     public static List<Integer> authorQuery(String aQuery, SoundexIndex sIndex) {
-        List<Integer> result = new ArrayList<Integer>();
+        List<List<Integer>> namePostings = new ArrayList<List<Integer>>();
         TokenProcessorStream t = new TokenProcessorStream(aQuery);
         while (t.hasNextToken()) {
             String name = t.nextToken();
             if (sIndex.getPostingsList(name) != null) {
-                result = unionList(result, sIndex.getPostingsList(name));
+                namePostings.add(sIndex.getPostingsList(name));
             }
         }
-        return result;
+        return KWayUnion.union(namePostings);
     }
 
     /**
@@ -366,8 +399,8 @@ public class QueryProcessor {
 
     /**
      * Positional intersection of two terms where the second term appears within
-     * k positions after the first. Source: Introduction to Information
-     * Retrieval (Figure 2.12)
+     * k positions after the first. The positions of every common document are
+     * merged in one pass.
      *
      * @param term1 positional postings list of the first term
      * @param term2 positional postings list of the second term
@@ -378,67 +411,25 @@ public class QueryProcessor {
     public static List<PositionalPosting> positionalIntersect(List<PositionalPosting> term1, List<PositionalPosting> term2, int k) {
 
         List<PositionalPosting> result = new ArrayList<PositionalPosting>();
-        List<Integer> docs1 = new ArrayList<Integer>(); // term1 documents
-        List<Integer> docs2 = new ArrayList<Integer>(); // term2 documents
         int i = 0; // term1 document index
         int j = 0; // term2 document index
 
-        // load the docIDs to list
-        for (PositionalPosting p : term1) {
-            docs1.add(p.getDocumentID());
-        }
-        for (PositionalPosting p : term2) {
-            docs2.add(p.getDocumentID());
-        }
-
         // intersect the docs
-        while (i < docs1.size() && j < docs2.size()) {
+        while (i < term1.size() && j < term2.size()) {
+            PositionalPosting p1 = term1.get(i);
+            PositionalPosting p2 = term2.get(j);
             // both terms appear in the doc
-            if ((int) docs1.get(i) == docs2.get(j)) {
-                List<Integer> candidate = new ArrayList<Integer>();
-                List<Integer> pp1 = term1.get(i).getTermPositions(); // term1 positions
-                List<Integer> pp2 = term2.get(j).getTermPositions(); // term2 positions
-                int ii = 0; // term1 position index
-                int jj = 0; // term2 position index
-
-                // check if term2 appears within k positions after term1
-                while (ii < pp1.size()) {
-                    while (jj < pp2.size()) {
-                        int relativePos = pp2.get(jj) - pp1.get(ii);
-                        if (relativePos > 0 && relativePos <= k) {
-                            // add term2 position to candidates
-                            candidate.add(pp2.get(jj));
-                        } else if (pp2.get(jj) > pp1.get(ii)) {
-                            break;
-                        }
-                        jj++;
-                    }
-                    // remove duplicate matches
-                    while (!candidate.isEmpty() && Math.abs(candidate.get(0) - pp1.get(ii)) > k) {
-                        candidate.remove(0);
-                    }
-                    // add candidates to the result 
-                    for (Integer pos : candidate) {
-                        int currentIndex = result.size() - 1;
-                        if (!result.isEmpty() && result.get(currentIndex).getDocumentID() == docs1.get(i)) {
-                            // the query appears more than once in the doc
-                            // add the position to existing posting
-                            result.get(currentIndex).addPosition(pos);
-                        } else { // add a new posting to the result 
-                            result.add(new PositionalPosting(docs1.get(i), pos));
-                        }
-                    }
-                    ii++;
-                }
+            if (p1.getDocumentID() == p2.getDocumentID()) {
+                addPositions(result, p1.getDocumentID(),
+                        PositionalMatcher.followingPositions(p1.getPositions(), p2.getPositions(), k));
                 i++;
                 j++;
-            } else if (docs1.get(i) < docs2.get(j)) {
+            } else if (p1.getDocumentID() < p2.getDocumentID()) {
                 i++;
             } else {
                 j++;
             }
         }
-
         return result;
     }
 
@@ -6,7 +6,7 @@ import formulas.FormEnum;
 import helper.PorterStemmer;
 import helper.ProgressDialog;
 import helper.SpellingCorrection;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskSoundexIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import retrievals.rankedRetrieval.RankedDocument;
@@ -20,9 +20,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -59,7 +57,7 @@ public class RetrievalGUI extends Thread implements MouseListener, ActionListene
 
     // Indeces
     private DiskInvertedIndex dIndex;
-    private KGramIndex kIndex;
+    private DiskKGramIndex kIndex;
     private DiskSoundexIndex sIndex;
 
     // Strings for easily changing the text of the label number.
@@ -113,24 +111,11 @@ public class RetrievalGUI extends Thread implements MouseListener, ActionListene
         all.addMouseListener(this);
         // Get the soundex index for creating the combo box right
         sIndex = new DiskSoundexIndex(path);
-        // Deserialize the k-gram index
-        this.kIndex = new KGramIndex();
-        createKGramIndex();
+        // Open the k-gram index
+        this.kIndex = new DiskKGramIndex(path);
         createUI(retr, form);
     }
 
-    private void createKGramIndex() {
-        try {
-            FileInputStream fileIn = new FileInputStream(path + "/Indexes/kGramIndex.bin");
-            ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-            this.kIndex = (KGramIndex) objectIn.readObject();
-            objectIn.close();
-            fileIn.close();
-        } catch (IOException | ClassNotFoundException ex) {
-            System.out.println(ex.toString());
-        }
-    }
-
     /**
      * Create the UI for processing queries and performing other user tasks
      */
@@ -2,7 +2,7 @@ package retrievals.booleanRetrieval;
 
 import query.processor.DiskQueryProcessor;
 import query.parser.BooleanParser;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskSoundexIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import java.util.ArrayList;
@@ -13,7 +13,7 @@ import java.util.List;
  */
 public class BooleanRetrieval {
 
-    public static List<String> booleanQuery(String query, boolean searchType, KGramIndex kIndex, DiskSoundexIndex sIndex, DiskInvertedIndex dIndex) {
+    public static List<String> booleanQuery(String query, boolean searchType, DiskKGramIndex kIndex, DiskSoundexIndex sIndex, DiskInvertedIndex dIndex) {
 
         BooleanParser parser = new BooleanParser(dIndex, kIndex); // Create the parser
         List<Integer> foundDocs = new ArrayList<Integer>(); // Create a list to save found documents  
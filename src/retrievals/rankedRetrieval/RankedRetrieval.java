@@ -7,11 +7,11 @@ import formulas.FormEnum;
 import formulas.Formula;
 import formulas.OkapiForm;
 import formulas.TfidfForm;
-import formulas.WackyForm;
 import query.Subquery;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import indexes.diskPart.DiskPosting;
+import indexes.diskPart.PostingsCursor;
 import query.processor.DiskQueryProcessor;
 import java.util.*;
 
@@ -19,14 +19,34 @@ import java.util.*;
  * Class used to process ranked queries;
  * follows term-at-a-time document scoring
  * as presented during CECS 429/529 lecture.
+ * Queries of several frequent plain terms on an index with score bounds are
+ * evaluated document-at-a-time with MaxScore pruning instead, which gives the
+ * same top k documents and scores.
  * 
  */
 public class RankedRetrieval {
 
     private DiskInvertedIndex dIndex;
+    private FormEnum formEnum;
     private Formula form;
     private int sizeOfFoundDocs = 0;
 
+    // relative rounding error allowed when a score is compared with a bound
+    private static final double BOUND_TOLERANCE = 1e-9;
+
+    // MaxScore only beats the dense accumulators when there are terms to skip
+    // over, and the terms are in at least this share of the documents on average
+    private static final int MIN_PRUNED_TERMS = 2;
+    private static final double MIN_PRUNED_DOCUMENT_SHARE = 0.25;
+
+    // score accumulators of every thread, reused between queries
+    private static final ThreadLocal<Accumulators> ACCUMULATORS = new ThreadLocal<Accumulators>() {
+        @Override
+        protected Accumulators initialValue() {
+            return new Accumulators();
+        }
+    };
+
     /**
      * Depending on the given form create a new Object for its instance.
      * @param dIndex
@@ -34,20 +54,8 @@ public class RankedRetrieval {
      */
     public RankedRetrieval(DiskInvertedIndex dIndex, FormEnum formEnum) {
         this.dIndex = dIndex;
-        switch (formEnum) {
-            case OKAPI:
-                form = new OkapiForm(dIndex);
-                break;
-            case TFIDF:
-                form = new TfidfForm(dIndex);
-                break;
-            case WACKY:
-                form = new WackyForm(dIndex);
-                break;
-            default:
-                form = new DefaultForm(dIndex);
-                break;
-        }
+        this.formEnum = formEnum;
+        this.form = formEnum.createFormula(dIndex);
     }
 
     private double calcWQT(List<DiskPosting> tDocIDs) {
@@ -75,107 +83,327 @@ public class RankedRetrieval {
     }
 
     /**
-     * Term-at-a-time scoring algorithm
-     * as presented during lecture
+     * Add the score of the posting to the accumulator of its document.
      * 
-     * @param accumulators Hashmap associating a document with its accumulated score
-     * @param docID A document which may or may not have a non-zero accumulated score
-     * @param accDocScore Accumulated document score associated with docID
+     * @param accumulators Accumulators of the query
+     * @param touchedCount Number of documents with a posting so far
+     * @param dPosting A posting of a query term
+     * @param WQT Query weight of the term
+     * @param termLengths True if the document length is normalized per term
+     * @return Number of documents with a posting
      */
-    private static void accumulate(HashMap<DiskPosting, Double> accumulators, DiskPosting docID, double accDocScore) {
-
-        if (accumulators.containsKey(docID)) {
-            double updatedAccumulation = accumulators.get(docID) + accDocScore;
-            accumulators.put(docID, updatedAccumulation);
-        } else {
-            accumulators.put(docID, accDocScore);
+    private int accumulate(Accumulators accumulators, int touchedCount, DiskPosting dPosting,
+            double WQT, boolean termLengths) {
+        int docID = dPosting.getDocumentID();
+        double accDocScore = calcWDT(dPosting) * WQT;
+        if (termLengths) {
+            ((OkapiForm) form).setdPosting(dPosting);
+            accDocScore /= getL_D(docID);
+        }
+        if (!accumulators.touched[docID]) {
+            accumulators.touched[docID] = true;
+            accumulators.touchedDocs[touchedCount++] = docID;
         }
+        accumulators.scores[docID] += accDocScore;
+        return touchedCount;
     }
 
     /**
      * Term-at-a-time document scoring method.
+     * The scores are summed up per document in a dense array of accumulators,
+     * the top k documents are kept in a bounded min-heap.
      * 
-     * @param kIndex KGramIndex used to process a wildcard query
+     * @param kIndex DiskKGramIndex used to process a wildcard query
      * @param query User input stored in Subquery structure
      * @param k Number of relevant documents to return in the result set
      * @return Array of top k relevant documents and their scores,
      * sorted by most relevant to least relevant
      */
-    public RankedDocument[] rankedQuery(KGramIndex kIndex, Subquery query, int k) {
-        List<DiskPosting> dPostings = null;
-        HashMap<DiskPosting, Double> accumulators = new HashMap<DiskPosting, Double>();
-        PriorityQueue<RankedDocument> rankedQueue = new PriorityQueue<RankedDocument>();
-        List<RankedDocument> returnedRIs = new ArrayList<RankedDocument>();
+    public RankedDocument[] rankedQuery(DiskKGramIndex kIndex, Subquery query, int k) {
+        if (k > 0 && dIndex.hasScoreBounds() && prunes(query.getLiterals())) {
+            return maxScoreQuery(query, k);
+        }
+        Accumulators accumulators = ACCUMULATORS.get();
+        accumulators.ensureCapacity(dIndex.getCorpusSize());
+        double[] scores = accumulators.scores;
+        boolean[] touched = accumulators.touched;
+        int[] touchedDocs = accumulators.touchedDocs;
+        int touchedCount = 0;
+        // okapi normalizes the document length with the term frequency of every term
+        boolean termLengths = form instanceof OkapiForm;
 
         for (String queryLit : query.getLiterals()) {
-            System.out.println("Literal: " + queryLit);
-            
-            // Collect accDocScore values for each document, add to priority queue
+
+            // Collect accDocScore values for each document
             if (queryLit.contains("*")) {
-                List<DiskPosting> wcResults = DiskQueryProcessor.wildcardQuery(queryLit, dIndex, kIndex);
-                dPostings = new ArrayList<DiskPosting>(wcResults.size());
-                dPostings = wcResults;
+                List<DiskPosting> dPostings = DiskQueryProcessor.wildcardQuery(queryLit, dIndex, kIndex);
+                double WQT = calcWQT(dPostings);
+                for (DiskPosting dPosting : dPostings) {
+                    touchedCount = accumulate(accumulators, touchedCount, dPosting, WQT, termLengths);
+                }
             } else {
-                dPostings = dIndex.getPostings(queryLit);
+                // decode the postings one at a time into the same posting
+                PostingsCursor cursor = dIndex.getPostingsCursor(queryLit);
+                if (cursor != null) {
+                    double WQT = form.calcWQT(cursor.getDocumentFrequency());
+                    DiskPosting dPosting = accumulators.posting;
+                    while (cursor.next()) {
+                        dPosting.setDocumentID(cursor.getDocumentID());
+                        dPosting.setTermFrequency(cursor.getTermFrequency());
+                        touchedCount = accumulate(accumulators, touchedCount, dPosting, WQT, termLengths);
+                    }
+                }
             }
+        }
+        
+        this.sizeOfFoundDocs = touchedCount;
 
-            if (dPostings != null) {
+        // Keep the k best non-zero document scores in the heap,
+        // and reset the accumulators for the next query
+        TopKHeap heap = accumulators.heap(k);
+        for (int i = 0; i < touchedCount; i++) {
+            int docID = touchedDocs[i];
+            double accumulator = scores[docID];
+            scores[docID] = 0;
+            touched[docID] = false;
 
-                double WQT = calcWQT(dPostings);
+            if (accumulator > 0.0) {
+                double rank = termLengths ? accumulator : accumulator / getL_D(docID);
+                heap.offer(rank, docID);
+            }
+        }
 
-                for (DiskPosting dPosting : dPostings) {
-                    double newAccumulator = calcWDT(dPosting) * WQT;
-                    accumulate(accumulators, dPosting, newAccumulator);
+        if (heap.size() == 0) {
+            return null;
+        }
+        return heap.toSortedArray();
+    }
+
+    /**
+     * Check if MaxScore pruning is faster than term-at-a-time scoring for the
+     * given literals. Pruning pays off only for several plain terms with long
+     * postings lists. The bounds of the formulas that divide by the document
+     * weight are too loose, the share of a term in most documents is far
+     * smaller than its bound.
+     * 
+     * @param literals Literals of the query
+     * @return true if the query is evaluated with MaxScore
+     */
+    private boolean prunes(List<String> literals) {
+        if (form instanceof DefaultForm || form instanceof TfidfForm
+                || literals.size() < MIN_PRUNED_TERMS) {
+            return false;
+        }
+        long postingsCount = 0;
+        for (String queryLit : literals) {
+            if (queryLit.contains("*")) {
+                return false;
+            }
+            postingsCount += dIndex.getDocumentFrequency(queryLit);
+        }
+        return postingsCount >= MIN_PRUNED_DOCUMENT_SHARE * literals.size() * dIndex.getCorpusSize();
+    }
+
+    /**
+     * Document-at-a-time scoring with MaxScore pruning. The terms are sorted
+     * by the highest share they can have in a score. The terms whose shares
+     * together cannot beat the k-th best score are non-essential: only the
+     * documents of the essential terms are candidates, and the non-essential
+     * terms are skipped ahead to a candidate only while it can still enter
+     * the top k. The score of a candidate is summed in query order as in the
+     * term-at-a-time method, so both give the same results.
+     * 
+     * @param query User input stored in Subquery structure
+     * @param k Number of relevant documents to return in the result set
+     * @return Array of top k relevant documents and their scores,
+     * sorted by most relevant to least relevant
+     */
+    private RankedDocument[] maxScoreQuery(Subquery query, int k) {
+        // okapi normalizes the document length with the term frequency of every term
+        boolean termLengths = form instanceof OkapiForm;
+        List<String> literals = query.getLiterals();
+        List<TermScorer> scorerList = new ArrayList<TermScorer>();
+        for (int i = 0; i < literals.size(); i++) {
+            PostingsCursor cursor = dIndex.getPostingsCursor(literals.get(i));
+            if (cursor != null && cursor.next()) {
+                double WQT = form.calcWQT(cursor.getDocumentFrequency());
+                double bound = WQT * dIndex.getScoreBound(literals.get(i), formEnum);
+                if (!(bound >= 0)) {
+                    bound = Double.POSITIVE_INFINITY; // never prune on an invalid bound
                 }
+                scorerList.add(new TermScorer(i, cursor, WQT, bound));
             }
         }
-        
-        this.sizeOfFoundDocs = accumulators.size();
-        
-        
-        // Create an array of all relevant documents.
-        // Relevancy is determine by its membership
-        // in the hashmap of accumulators
-        DiskPosting[] relevantDocuments = new DiskPosting[accumulators.size()];
-        accumulators.keySet().toArray(relevantDocuments);
+        TermScorer[] scorers = scorerList.toArray(new TermScorer[0]);
+        Arrays.sort(scorers, new Comparator<TermScorer>() {
+            @Override
+            public int compare(TermScorer s1, TermScorer s2) {
+                return Double.compare(s1.bound, s2.bound);
+            }
+        });
+        // boundSums[i] is the highest share of the scorers before i together
+        double[] boundSums = new double[scorers.length + 1];
+        for (int i = 0; i < scorers.length; i++) {
+            boundSums[i + 1] = boundSums[i] + scorers[i].bound;
+        }
+        double[] shares = new double[literals.size()]; // share of every literal in the current document
+        boolean[] matched = new boolean[literals.size()];
+
+        TopKHeap heap = ACCUMULATORS.get().heap(k);
+        DiskPosting dPosting = new DiskPosting(0, 0);
+        int firstEssential = 0; // scorers before it are non-essential
+        int scoredDocs = 0;
+        while (true) {
+            // the next candidate is the smallest document of the essential terms
+            int docID = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < scorers.length; i++) {
+                if (!scorers[i].exhausted) {
+                    docID = Math.min(docID, scorers[i].cursor.getDocumentID());
+                }
+            }
+            if (docID == Integer.MAX_VALUE) {
+                break;
+            }
+
+            Arrays.fill(matched, false);
+            double lengthFactor = 1; // turns the summed shares into the score of the document
+            if (!termLengths) {
+                lengthFactor = 1 / getL_D(docID);
+            }
+            double essentialScore = 0;
+            for (int i = firstEssential; i < scorers.length; i++) {
+                TermScorer scorer = scorers[i];
+                if (!scorer.exhausted && scorer.cursor.getDocumentID() == docID) {
+                    double share = scorer.share(dPosting);
+                    shares[scorer.literal] = share;
+                    matched[scorer.literal] = true;
+                    essentialScore += share;
+                    scorer.exhausted = !scorer.cursor.next();
+                }
+            }
 
-        // Add all normalized, non-zero document scores to priority queue
-        for (DiskPosting relevantDocument : relevantDocuments) {
+            // add the non-essential terms while the document can still enter the top k
+            boolean pruned = false;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (cannotEnter(essentialScore * lengthFactor + boundSums[i + 1], heap)) {
+                    pruned = true;
+                    break;
+                }
+                TermScorer scorer = scorers[i];
+                if (!scorer.exhausted && scorer.cursor.advance(docID)) {
+                    if (scorer.cursor.getDocumentID() == docID) {
+                        double share = scorer.share(dPosting);
+                        shares[scorer.literal] = share;
+                        matched[scorer.literal] = true;
+                        essentialScore += share;
+                    }
+                } else {
+                    scorer.exhausted = true;
+                }
+            }
+            if (pruned) {
+                continue;
+            }
 
-            double accumulator = accumulators.get(relevantDocument);
-            
+            // sum up the shares in query order
+            double accumulator = 0;
+            for (int literal = 0; literal < shares.length; literal++) {
+                if (matched[literal]) {
+                    accumulator += shares[literal];
+                }
+            }
+            scoredDocs++;
             if (accumulator > 0.0) {
-                
-                if (form instanceof OkapiForm) {
-                    ((OkapiForm) form).setdPosting(relevantDocument);
+                double rank = termLengths ? accumulator : accumulator / getL_D(docID);
+                heap.offer(rank, docID);
+                // terms that together cannot beat the k-th score become non-essential
+                while (firstEssential < scorers.length
+                        && cannotEnter(boundSums[firstEssential + 1], heap)) {
+                    firstEssential++;
                 }
-                
-                double docWeight = getL_D(relevantDocument.getDocumentID());
-                double rank = accumulator / docWeight;
-                rankedQueue.add(new RankedDocument(rank, relevantDocument.getDocumentID()));
             }
         }
+        this.sizeOfFoundDocs = scoredDocs;
 
-        if (rankedQueue.isEmpty()) {
+        if (heap.size() == 0) {
             return null;
         }
-        
-        // Adjust size of result set if there are
-        // fewer results than the k value.
-        if (accumulators.size() < k) {
-            k = accumulators.size();
+        return heap.toSortedArray();
+    }
+
+    /**
+     * Check if a document with the given highest score cannot enter the full
+     * heap. The score is allowed a small rounding error.
+     * 
+     * @param maxScore Highest score the document can get
+     * @param heap Heap of the top k documents
+     * @return true if the document cannot be one of the top k documents
+     */
+    private static boolean cannotEnter(double maxScore, TopKHeap heap) {
+        return heap.isFull() && maxScore * (1 + BOUND_TOLERANCE) < heap.getMinScore();
+    }
+
+    /**
+     * A query term for document-at-a-time scoring.
+     */
+    private class TermScorer {
+
+        private final int literal; // position of the term in the query
+        private final PostingsCursor cursor;
+        private final double WQT;
+        private final double bound; // highest share of the term in a score
+        private boolean exhausted;
+
+        private TermScorer(int literal, PostingsCursor cursor, double WQT, double bound) {
+            this.literal = literal;
+            this.cursor = cursor;
+            this.WQT = WQT;
+            this.bound = bound;
         }
-        
-        // Add the top k documents to the final result set.
-        for (int i = 0; i < k; i++) {
-            RankedDocument ri = rankedQueue.poll();
-            returnedRIs.add(ri);
+
+        /**
+         * Calculate the share of the term in the accumulated score of the
+         * current document, as the term-at-a-time method does.
+         */
+        private double share(DiskPosting dPosting) {
+            dPosting.setDocumentID(cursor.getDocumentID());
+            dPosting.setTermFrequency(cursor.getTermFrequency());
+            double accDocScore = calcWDT(dPosting) * WQT;
+            if (form instanceof OkapiForm) {
+                ((OkapiForm) form).setdPosting(dPosting);
+                accDocScore /= getL_D(dPosting.getDocumentID());
+            }
+            return accDocScore;
         }
+    }
+
+    /**
+     * Score accumulators of a thread. They are sized to the corpus and reused
+     * by every query of the thread; only the touched documents are reset.
+     */
+    private static class Accumulators {
+
+        private double[] scores = new double[0]; // accumulated score of every document
+        private boolean[] touched = new boolean[0]; // true if the document has a posting in the query
+        private int[] touchedDocs = new int[0]; // the touched documents in the order they were found
+        private TopKHeap heap;
+        private final DiskPosting posting = new DiskPosting(0, 0); // the current posting of a term
 
-        // Convert result set to array
-        RankedDocument[] results = new RankedDocument[returnedRIs.size()];
-        returnedRIs.toArray(results);
-        return results;
+        private void ensureCapacity(int corpusSize) {
+            if (scores.length < corpusSize) {
+                scores = new double[corpusSize];
+                touched = new boolean[corpusSize];
+                touchedDocs = new int[corpusSize];
+            }
+        }
+
+        private TopKHeap heap(int k) {
+            if (heap == null || heap.capacity() != k) {
+                heap = new TopKHeap(k);
+            }
+            heap.clear();
+            return heap;
+        }
     }
 
     public int getSizeOfFoundDocs() {
@@ -0,0 +1,124 @@
+package retrievals.rankedRetrieval;
+
+/**
+ * Bounded min-heap that keeps the k best scored documents. The root is the
+ * worst document kept, so a new document only has to beat the root. Of two
+ * documents with the same score the one with the lower document ID is better.
+ */
+class TopKHeap {
+
+    private final double[] mScores;
+    private final int[] mDocIDs;
+    private int mSize;
+
+    TopKHeap(int k) {
+        mScores = new double[Math.max(k, 0)];
+        mDocIDs = new int[Math.max(k, 0)];
+    }
+
+    /**
+     * Add the document if it is better than the worst document kept.
+     *
+     * @param score score of the document
+     * @param docID document ID
+     */
+    void offer(double score, int docID) {
+        if (mSize < mScores.length) {
+            mScores[mSize] = score;
+            mDocIDs[mSize] = docID;
+            siftUp(mSize++);
+        } else if (mSize > 0 && isWorse(mScores[0], mDocIDs[0], score, docID)) {
+            mScores[0] = score;
+            mDocIDs[0] = docID;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return true if a new document has to beat the worst document kept
+     */
+    boolean isFull() {
+        return mSize == mScores.length;
+    }
+
+    /**
+     * @return score of the worst document kept
+     */
+    double getMinScore() {
+        return mScores[0];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int capacity() {
+        return mScores.length;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Empty the heap into an array of documents, best document first.
+     *
+     * @return the ranked documents
+     */
+    RankedDocument[] toSortedArray() {
+        RankedDocument[] results = new RankedDocument[mSize];
+        while (mSize > 0) {
+            results[mSize - 1] = new RankedDocument(mScores[0], mDocIDs[0]);
+            mSize--;
+            mScores[0] = mScores[mSize];
+            mDocIDs[0] = mDocIDs[mSize];
+            siftDown(0);
+        }
+        return results;
+    }
+
+    /**
+     * @return true if document a ranks below document b
+     */
+    private static boolean isWorse(double scoreA, int docA, double scoreB, int docB) {
+        return scoreA < scoreB || (scoreA == scoreB && docA > docB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isWorse(mScores[i], mDocIDs[i], mScores[parent], mDocIDs[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1, right = left + 1;
+            if (left < mSize && isWorse(mScores[left], mDocIDs[left], mScores[worst], mDocIDs[worst])) {
+                worst = left;
+            }
+            if (right < mSize && isWorse(mScores[right], mDocIDs[right], mScores[worst], mDocIDs[worst])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        double score = mScores[i];
+        mScores[i] = mScores[j];
+        mScores[j] = score;
+        int docID = mDocIDs[i];
+        mDocIDs[i] = mDocIDs[j];
+        mDocIDs[j] = docID;
+    }
+}
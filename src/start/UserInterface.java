@@ -54,7 +54,25 @@ public class UserInterface extends JFrame implements ThreadFinishedCallBack {
                 optionsBeginning[1]);  // save users answer
         if (resultBeginning == 0) { // 0 = indexig
             path = chooseDirectory(); // let the user select where the corpus is he wants to index
-            new IndexingGUI(path); // create indexing GUI.
+            char mode = 'b'; // build the index
+            if (Files.exists(Paths.get(path.toString(), "Indexes"))) {
+                // the corpus is indexed already, new documents can be added without a rebuild
+                Object[] optionsIndexing = {"Add new documents",
+                    "Merge and compact the index", "Rebuild the index"};
+                int resultIndexing = JOptionPane.showOptionDialog(this,
+                        "The corpus is indexed already. What do you want to do?",
+                        "Indexing",
+                        JOptionPane.YES_NO_CANCEL_OPTION,
+                        JOptionPane.PLAIN_MESSAGE,
+                        img,
+                        optionsIndexing,
+                        optionsIndexing[0]);
+                if (resultIndexing == -1) {
+                    System.exit(0);
+                }
+                mode = "amb".charAt(resultIndexing);
+            }
+            new IndexingGUI(path, mode); // create indexing GUI.
         } else if (resultBeginning == 1)//otherwise the user wants to process a query
         {
             path = chooseDirectory(); // let the user select where the corpus is saved
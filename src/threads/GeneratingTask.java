@@ -2,7 +2,7 @@ package threads;
 
 import formulas.FormEnum;
 import query.Subquery;
-import indexes.KGramIndex;
+import indexes.diskPart.DiskKGramIndex;
 import indexes.diskPart.DiskSoundexIndex;
 import indexes.diskPart.DiskInvertedIndex;
 import retrievals.booleanRetrieval.BooleanRetrieval;
@@ -32,7 +32,7 @@ public class GeneratingTask implements Runnable {
     private String[] dic;
 
     private boolean searchType;
-    private KGramIndex kgIndex;
+    private DiskKGramIndex kgIndex;
     private DiskSoundexIndex sIndex;
     private String query;
     private DiskInvertedIndex dIndex;
@@ -52,7 +52,7 @@ public class GeneratingTask implements Runnable {
      * @param query
      * @param k
      */
-    public GeneratingTask(DiskInvertedIndex dIndex, KGramIndex kgIndex, String query, int k, ThreadFinishedCallBack finish, FormEnum form) {
+    public GeneratingTask(DiskInvertedIndex dIndex, DiskKGramIndex kgIndex, String query, int k, ThreadFinishedCallBack finish, FormEnum form) {
         opportunities = GeneratingOpportunities.RANKED;
         this.dIndex = dIndex;
         this.kgIndex = kgIndex;
@@ -65,7 +65,7 @@ public class GeneratingTask implements Runnable {
     /**
      * Constructor for making boolean retrieval.
      */
-    public GeneratingTask(String query, DiskInvertedIndex dIndex, boolean searchType, KGramIndex kIndex, DiskSoundexIndex sIndex, ThreadFinishedCallBack finish) {
+    public GeneratingTask(String query, DiskInvertedIndex dIndex, boolean searchType, DiskKGramIndex kIndex, DiskSoundexIndex sIndex, ThreadFinishedCallBack finish) {
         opportunities = GeneratingOpportunities.BOOLEAN;
         this.query = query;
         this.kgIndex = kIndex;
@@ -18,6 +18,9 @@ public class Indexing implements Runnable {
 
     private ThreadFinishedCallBack callback;
 
+    // 'b' to build the index, 'a' to add the new documents, 'm' to merge the deltas and compact the index
+    private char mode = 'b';
+
     /**
      * Constructors
      */
@@ -31,14 +34,30 @@ public class Indexing implements Runnable {
         this.callback = finish;        
     }
 
+    // Constructor for adding to or merging the index of a corpus
+    public Indexing(Path path, ThreadFinishedCallBack finish, char mode) {
+        this(path, finish);
+        this.mode = mode;
+    }
+
     /**
-     * Create Positional Inverted Index on disk.
+     * Create Positional Inverted Index on disk, add the new documents to it
+     * or merge its deltas.
      */
     @Override
     public void run() {
         timer = new Date().getTime(); // Start the timer    
         IndexWriter writer = new IndexWriter(path.toString());  
-        writer.buildIndex();
+        switch (mode) {
+            case 'a':
+                writer.addDocuments();
+                break;
+            case 'm':
+                writer.mergeSegments();
+                break;
+            default:
+                writer.buildIndex();
+        }
         System.out.println("Time for indexing: " + (new Date().getTime() - timer)); // Print the length of time the process took   
         callback.notifyThreadFinished();
     }
@@ -0,0 +1,217 @@
+package token;
+
+import java.util.Arrays;
+
+/**
+ * Tokenizes the text of a document in one pass over its characters. It
+ * returns the same tokens as a SimpleTokenStream whose tokens are processed
+ * by a TokenProcessorStream: the text is split at whitespace, non-word
+ * characters are removed from the beginning and end of every word,
+ * apostrophes are removed and the word is converted to lowercase. A
+ * hyphenated word is returned without its hyphens first and then as its
+ * parts.
+ *
+ * No regular expressions, scanners or intermediate strings are used, the
+ * buffers are reused for every word and with reset() for every document.
+ * Only the returned tokens are allocated, and words with characters outside
+ * of ASCII, which are lowercased with String.toLowerCase.
+ */
+public class DocumentTokenStream implements TokenStream {
+
+    // ASCII letters can be lowercased directly unless the default locale has its own rules for them
+    private static final boolean ASCII_LOWER_CASE = "I".toLowerCase().equals("i");
+
+    private CharSequence mText;
+    private int mTextPosition; // position of the next character of the text
+    private int mWordCount; // number of whitespace separated words read so far
+
+    private char[] mWord = new char[32]; // the processed current word, with its hyphens
+    private int mWordLength;
+    private boolean mHyphenated;
+    private int mPartStart = -1; // start of the next hyphen separated part, -1 before the whole word
+
+    private String mNextToken; // the token returned by the next call of nextToken()
+    private int mNextPosition;
+    private int mPosition = -1; // position of the last returned token
+
+    /**
+     * Constructs a DocumentTokenStream to read from a String of text.
+     */
+    public DocumentTokenStream(CharSequence text) {
+        reset(text);
+    }
+
+    /**
+     * Start reading from another text, keeping the buffers.
+     */
+    public final void reset(CharSequence text) {
+        mText = text;
+        mTextPosition = 0;
+        mWordCount = 0;
+        mWordLength = 0;
+        mHyphenated = false;
+        mPartStart = -1;
+        mNextToken = null;
+        mPosition = -1;
+    }
+
+    /**
+     * Returns true if the stream has tokens remaining.
+     */
+    @Override
+    public boolean hasNextToken() {
+        if (mNextToken == null) {
+            mNextToken = findNextToken();
+        }
+        return mNextToken != null;
+    }
+
+    /**
+     * Returns the next token from the stream, or null if there is no token
+     * available.
+     */
+    @Override
+    public String nextToken() {
+        if (!hasNextToken()) {
+            return null;
+        }
+        String token = mNextToken;
+        mNextToken = null;
+        mPosition = mNextPosition;
+        return token;
+    }
+
+    /**
+     * Get the position of the last returned token: the number of whitespace
+     * separated words before its word.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Get the number of whitespace separated words read so far. Once
+     * hasNextToken() returned false it is the number of words of the text.
+     */
+    public int getWordCount() {
+        return mWordCount;
+    }
+
+    private String findNextToken() {
+        while (true) {
+            if (mPartStart < 0) {
+                // the whole word comes first
+                if (mWordLength > 0) {
+                    mPartStart = 0;
+                    mNextPosition = mWordCount - 1;
+                    return mHyphenated ? withoutHyphens() : new String(mWord, 0, mWordLength);
+                }
+            } else if (mHyphenated) {
+                // then the parts of a hyphenated word
+                while (mPartStart < mWordLength) {
+                    int partEnd = mPartStart;
+                    while (partEnd < mWordLength && mWord[partEnd] != '-') {
+                        partEnd++;
+                    }
+                    int partStart = mPartStart;
+                    mPartStart = partEnd + 1;
+                    if (partEnd > partStart) {
+                        mNextPosition = mWordCount - 1;
+                        return new String(mWord, partStart, partEnd - partStart);
+                    }
+                }
+            }
+            if (!readWord()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Read and process the next whitespace separated word of the text.
+     *
+     * @return false at the end of the text
+     */
+    private boolean readWord() {
+        int length = mText.length();
+        int start = mTextPosition;
+        while (start < length && Character.isWhitespace(mText.charAt(start))) {
+            start++;
+        }
+        if (start == length) {
+            mTextPosition = length;
+            return false;
+        }
+        int end = start;
+        while (end < length && !Character.isWhitespace(mText.charAt(end))) {
+            end++;
+        }
+        mTextPosition = end;
+        mWordCount++;
+
+        // remove non-word characters from the beginning and end
+        while (start < end && !isWordChar(mText.charAt(start))) {
+            start++;
+        }
+        while (end > start && !isWordChar(mText.charAt(end - 1))) {
+            end--;
+        }
+
+        // copy the word without apostrophes, lowercasing ASCII letters
+        if (mWord.length < end - start) {
+            mWord = new char[Math.max(end - start, mWord.length * 2)];
+        }
+        mWordLength = 0;
+        mHyphenated = false;
+        mPartStart = -1;
+        boolean simple = ASCII_LOWER_CASE;
+        for (int i = start; i < end; i++) {
+            char c = mText.charAt(i);
+            if (c == '\'') {
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c == '-') {
+                mHyphenated = true;
+            } else if (c >= 0x80) {
+                simple = false;
+            }
+            mWord[mWordLength++] = c;
+        }
+        if (!simple) {
+            // characters outside of ASCII are lowercased as String.toLowerCase does
+            String lowerCase = mText.subSequence(start, end).toString().replace("'", "").toLowerCase();
+            if (mWord.length < lowerCase.length()) {
+                mWord = Arrays.copyOf(mWord, lowerCase.length());
+            }
+            lowerCase.getChars(0, lowerCase.length(), mWord, 0);
+            mWordLength = lowerCase.length();
+        }
+        return true;
+    }
+
+    private String withoutHyphens() {
+        int length = 0;
+        for (int i = 0; i < mWordLength; i++) {
+            if (mWord[i] != '-') {
+                length++;
+            }
+        }
+        char[] token = new char[length];
+        int k = 0;
+        for (int i = 0; i < mWordLength; i++) {
+            if (mWord[i] != '-') {
+                token[k++] = mWord[i];
+            }
+        }
+        return new String(token);
+    }
+
+    /**
+     * Check if the character is a word character [a-zA-Z_0-9] as \w matches it.
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}